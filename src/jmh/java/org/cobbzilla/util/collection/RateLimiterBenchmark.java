@@ -0,0 +1,54 @@
+package org.cobbzilla.util.collection;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RateLimiter.tryAcquire on one hot key and spread over many keys, from one thread and from several at once.
+ * Run with "mvn -Pjmh clean compile exec:exec -Djmh.args='RateLimiterBenchmark -prof gc'".
+ *
+ * The limits are high enough that every request is allowed, so each operation takes a token with a compareAndSet,
+ * which is the contended path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RateLimiterBenchmark {
+
+    public static final int KEYS = 1000000;
+
+    private RateLimiter<Integer> limiter;
+    private Integer hotKey;
+    private Integer[] keys;
+
+    @Setup public void setup () {
+        limiter = new RateLimiter<>(Long.MAX_VALUE / 1000000, 1000000, 1);
+        hotKey = 42;
+        // boxed up front, so the benchmarks measure the limiter and not Integer.valueOf
+        keys = new Integer[KEYS];
+        for (int i=0; i<KEYS; i++) {
+            keys[i] = i;
+            limiter.tryAcquire(keys[i]);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+        @Setup public void setup () { next = (int) (Thread.currentThread().getId() * 7919 % KEYS); }
+        int next () { return next = next + 1 == KEYS ? 0 : next + 1; }
+    }
+
+    @Benchmark public boolean hotKey () { return limiter.tryAcquire(hotKey); }
+
+    @Benchmark @Threads(4) public boolean hotKeyContended () { return limiter.tryAcquire(hotKey); }
+
+    @Benchmark public boolean manyKeys (Cursor cursor) { return limiter.tryAcquire(keys[cursor.next()]); }
+
+    @Benchmark @Threads(4) public boolean manyKeysContended (Cursor cursor) { return limiter.tryAcquire(keys[cursor.next()]); }
+
+}
@@ -0,0 +1,137 @@
+package org.cobbzilla.util.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.StringWriter;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the common JsonUtil and JsonEdit operations, on small, medium and large documents.
+ * Run with "mvn -Pjmh clean compile exec:exec" (see the jmh profile in pom.xml). Allocation per operation is
+ * reported by the gc profiler, as gc.alloc.rate.norm.
+ *
+ * Every document has the same shape: a few settings, then an array of "servers" objects. The size
+ * parameter controls the number of servers: 2 (small, ~0.5KB), 100 (medium, ~20KB) or 5000 (large, ~1MB).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+
+    public static final String FIND_PATH_TEMPLATE = "servers[%d].meta.region";
+    public static final String TOKENIZE_PATH = "settings.'dotted.name'.servers[42].meta.tags[]";
+
+    @Param({"small", "medium", "large"}) public String size;
+
+    private Map<String, Object> document;
+    private String json;
+    private byte[] jsonBytes;
+    private byte[] smile;
+    private JsonNode tree;
+    private String findPath;
+    private JsonNode update;
+    private JsonEditOperation writeOperation;
+
+    @Setup public void setup () throws Exception {
+        document = document(servers(size));
+        json = JsonUtil.toJson(document);
+        jsonBytes = JsonUtil.toJsonBytes(document);
+        smile = JsonUtil.toSmile(document);
+        tree = JsonUtil.fromJson(json, JsonNode.class);
+        findPath = String.format(FIND_PATH_TEMPLATE, servers(size) / 2);
+        update = JsonUtil.fromJson(JsonUtil.toJson(document(servers(size) / 10 + 1)), JsonNode.class);
+        ((ObjectNode) update.get("settings")).put("timeout", 60);
+        writeOperation = new JsonEditOperation()
+                .setType(JsonEditOperationType.write)
+                .setPath("settings.timeout")
+                .setJson("60");
+    }
+
+    public static int servers (String size) {
+        switch (size) {
+            case "small": return 2;
+            case "medium": return 100;
+            case "large": return 5000;
+            default: throw new IllegalArgumentException("invalid size: "+size);
+        }
+    }
+
+    public static Map<String, Object> document (int servers) {
+        final Map<String, Object> settings = new LinkedHashMap<>();
+        settings.put("name", "benchmark");
+        settings.put("timeout", 30);
+        settings.put("enabled", true);
+        settings.put("ratio", 0.75);
+
+        final List<Object> list = new ArrayList<>(servers);
+        for (int i=0; i<servers; i++) {
+            final Map<String, Object> meta = new LinkedHashMap<>();
+            meta.put("region", "region-" + (i % 7));
+            meta.put("rack", i % 42);
+            meta.put("tags", Arrays.asList("tag" + (i % 3), "tag" + (i % 5)));
+
+            final Map<String, Object> server = new LinkedHashMap<>();
+            server.put("id", "server-" + i);
+            server.put("host", "host-" + i + ".example.com");
+            server.put("port", 8000 + i);
+            server.put("weight", i / 10.0);
+            server.put("active", i % 2 == 0);
+            server.put("meta", meta);
+            list.add(server);
+        }
+
+        final Map<String, Object> doc = new LinkedHashMap<>();
+        doc.put("version", 1);
+        doc.put("settings", settings);
+        doc.put("servers", list);
+        return doc;
+    }
+
+    @Benchmark public String toJson () throws Exception { return JsonUtil.toJson(document); }
+
+    @Benchmark public byte[] toJsonBytes () throws Exception { return JsonUtil.toJsonBytes(document); }
+
+    @Benchmark public byte[] toSmile () throws Exception { return JsonUtil.toSmile(document); }
+
+    @Benchmark public JsonNode fromJson () throws Exception { return JsonUtil.fromJson(json, JsonNode.class); }
+
+    @Benchmark public JsonNode fromJsonBytes () throws Exception { return JsonUtil.fromJson(jsonBytes, JsonNode.class); }
+
+    @Benchmark public JsonNode fromSmile () throws Exception { return JsonUtil.fromSmile(smile, JsonNode.class); }
+
+    @Benchmark public Map fromJsonToMap () throws Exception { return JsonUtil.fromJson(json, Map.class); }
+
+    @Benchmark public JsonNode findNode () throws Exception { return JsonUtil.findNode(tree, findPath); }
+
+    @Benchmark public List<String> tokenize () { return JsonUtil.tokenize(TOKENIZE_PATH); }
+
+    // the merge target is modified, so each merge gets a fresh copy. compare with deepCopy to see the cost of the merge alone
+    @Benchmark public JsonNode deepCopy () { return tree.deepCopy(); }
+
+    @Benchmark public JsonNode mergeNodes () { return JsonUtil.mergeNodes(tree.deepCopy(), update); }
+
+    @Benchmark public List<String> mergeNodesKeyed () { return JsonUtil.mergeNodes((ObjectNode) tree.deepCopy(), update, "id"); }
+
+    @Benchmark public String mergeJson () throws Exception { return JsonUtil.mergeJson(json, update); }
+
+    @Benchmark public String edit () throws Exception {
+        return new JsonEdit().setJsonData(json).addOperation(writeOperation).edit();
+    }
+
+    @Benchmark public String editStreaming () throws Exception {
+        final StringWriter out = new StringWriter(json.length() + 64);
+        new JsonEdit().setJsonData(json).setStreaming(true).addOperation(writeOperation).edit(out);
+        return out.toString();
+    }
+
+    @Benchmark public List<JsonEditOperation> diff () {
+        return new JsonDiff().diff(tree, update);
+    }
+
+}
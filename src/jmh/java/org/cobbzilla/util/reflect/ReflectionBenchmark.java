@@ -0,0 +1,192 @@
+package org.cobbzilla.util.reflect;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.cobbzilla.util.bean.BeanMerger;
+import org.cobbzilla.util.collection.mappy.MappyList;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ReflectionUtil and BeanMerger, each next to the hand-written code it stands in for (the *Baseline benchmarks).
+ * Run with "mvn -Pjmh clean compile exec:exec -Djmh.args='ReflectionBenchmark -prof gc'". Allocation per operation is
+ * reported by the gc profiler, as gc.alloc.rate.norm.
+ *
+ * The backend parameter picks how getters and setters are called (see PropertyAccessor): through MethodHandles,
+ * or through plain reflection (the default). Each value runs in its own fork, so the choice is made before anything
+ * is cached.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReflectionBenchmark {
+
+    @NoArgsConstructor
+    public static class Address {
+        @Getter @Setter private String street;
+        @Getter @Setter private String city;
+        @Getter @Setter private Integer zip;
+    }
+
+    @NoArgsConstructor
+    public static class Person {
+        @Getter @Setter private Long id;
+        @Getter @Setter private String name;
+        @Getter @Setter private String email;
+        @Getter @Setter private Integer age;
+        @Getter @Setter private Boolean admin;
+        @Getter @Setter private Long created;
+        @Getter @Setter private Address address;
+
+        public Person (Person other) { ReflectionUtil.copy(this, other); }
+
+        public Person (Long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+
+    public static class PersonMappy extends MappyList<String, Person> {}
+
+    @Param({"methodHandles", "reflection"}) public String backend;
+
+    private Person person;
+    private Person dest;
+    private Map<String, Object> map;
+
+    @Setup public void setup () {
+        System.setProperty(PropertyAccessor.PROP_METHOD_HANDLES, String.valueOf(backend.equals("methodHandles")));
+        if (PropertyAccessor.USE_METHOD_HANDLES != backend.equals("methodHandles")) {
+            throw new IllegalStateException("backend "+backend+" not in effect, PropertyAccessor was initialized too soon");
+        }
+        final Address address = new Address();
+        address.setStreet("1 Main St");
+        address.setCity("Springfield");
+        address.setZip(12345);
+
+        person = new Person(42L, "Pat");
+        person.setEmail("pat@example.com");
+        person.setAge(30);
+        person.setAdmin(false);
+        person.setCreated(1500000000000L);
+        person.setAddress(address);
+
+        dest = new Person();
+        map = ReflectionUtil.toMap(person);
+        map.remove("address");
+    }
+
+    @Benchmark public Object get () { return ReflectionUtil.get(person, "name"); }
+
+    @Benchmark public Object getBaseline () { return person.getName(); }
+
+    @Benchmark public Object getDotted () { return ReflectionUtil.get(person, "address.city"); }
+
+    @Benchmark public Object getDottedBaseline () {
+        final Address address = person.getAddress();
+        return address == null ? null : address.getCity();
+    }
+
+    @Benchmark public Person set () {
+        ReflectionUtil.set(dest, "name", "Sam");
+        return dest;
+    }
+
+    @Benchmark public Person setBaseline () {
+        dest.setName("Sam");
+        return dest;
+    }
+
+    @Benchmark public Person setDotted () {
+        ReflectionUtil.set(person, "address.city", "Shelbyville");
+        return person;
+    }
+
+    @Benchmark public Person setDottedBaseline () {
+        person.getAddress().setCity("Shelbyville");
+        return person;
+    }
+
+    // a fresh destination each time, so every field is actually copied
+    @Benchmark public Person copy () {
+        final Person p = new Person();
+        ReflectionUtil.copy(p, person);
+        return p;
+    }
+
+    @Benchmark public Person copyBaseline () {
+        final Person p = new Person();
+        if (person.getId() != null && !person.getId().equals(p.getId())) p.setId(person.getId());
+        if (person.getName() != null && !person.getName().equals(p.getName())) p.setName(person.getName());
+        if (person.getEmail() != null && !person.getEmail().equals(p.getEmail())) p.setEmail(person.getEmail());
+        if (person.getAge() != null && !person.getAge().equals(p.getAge())) p.setAge(person.getAge());
+        if (person.getAdmin() != null && !person.getAdmin().equals(p.getAdmin())) p.setAdmin(person.getAdmin());
+        if (person.getCreated() != null && !person.getCreated().equals(p.getCreated())) p.setCreated(person.getCreated());
+        if (person.getAddress() != null && !person.getAddress().equals(p.getAddress())) p.setAddress(person.getAddress());
+        return p;
+    }
+
+    @Benchmark public Map<String, Object> toMap () { return ReflectionUtil.toMap(person); }
+
+    @Benchmark public Map<String, Object> toMapBaseline () {
+        final Map<String, Object> m = new HashMap<>();
+        if (person.getId() != null) m.put("id", person.getId());
+        if (person.getName() != null) m.put("name", person.getName());
+        if (person.getEmail() != null) m.put("email", person.getEmail());
+        if (person.getAge() != null) m.put("age", person.getAge());
+        if (person.getAdmin() != null) m.put("admin", person.getAdmin());
+        if (person.getCreated() != null) m.put("created", person.getCreated());
+        if (person.getAddress() != null) m.put("address", person.getAddress());
+        return m;
+    }
+
+    @Benchmark public Person copyFromMap () { return ReflectionUtil.copyFromMap(new Person(), map); }
+
+    @Benchmark public Person copyFromMapBaseline () {
+        final Person p = new Person();
+        p.setId((Long) map.get("id"));
+        p.setName((String) map.get("name"));
+        p.setEmail((String) map.get("email"));
+        p.setAge((Integer) map.get("age"));
+        p.setAdmin((Boolean) map.get("admin"));
+        p.setCreated((Long) map.get("created"));
+        return p;
+    }
+
+    // copy constructor, which itself does a ReflectionUtil.copy
+    @Benchmark public Person instantiateCopy () { return ReflectionUtil.copy(person); }
+
+    @Benchmark public Person instantiateCopyBaseline () { return new Person(person); }
+
+    @Benchmark public Person instantiateArgs () { return ReflectionUtil.instantiate(Person.class, 42L, "Pat"); }
+
+    @Benchmark public Person instantiateArgsBaseline () { return new Person(42L, "Pat"); }
+
+    @Benchmark public Class getTypeParam () { return ReflectionUtil.getTypeParam(PersonMappy.class, 1); }
+
+    @Benchmark public Class getTypeParamBaseline () { return Person.class; }
+
+    @Benchmark public Person mergeNotNullProperties () {
+        BeanMerger.mergeNotNullProperties(dest, person);
+        return dest;
+    }
+
+    @Benchmark public Person mergeNotNullPropertiesBaseline () {
+        if (person.getId() != null) dest.setId(person.getId());
+        if (person.getName() != null) dest.setName(person.getName());
+        if (person.getEmail() != null) dest.setEmail(person.getEmail());
+        if (person.getAge() != null) dest.setAge(person.getAge());
+        if (person.getAdmin() != null) dest.setAdmin(person.getAdmin());
+        if (person.getCreated() != null) dest.setCreated(person.getCreated());
+        if (person.getAddress() != null) dest.setAddress(person.getAddress());
+        return dest;
+    }
+
+}
@@ -1,15 +1,36 @@
 package org.cobbzilla.util.bean;
 
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import org.apache.commons.beanutils.MethodUtils;
 import org.apache.commons.beanutils.PropertyUtilsBean;
+import org.cobbzilla.util.reflect.AccessorRegistry;
+import org.cobbzilla.util.reflect.PropertyAccessor;
 
 import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static org.cobbzilla.util.daemon.ZillaRuntime.die;
 
+/**
+ * Copies bean properties from one object to another. Which properties to copy is worked out once for each
+ * combination of origin class, destination class and CopyEvaluator (using commons-beanutils, so the properties are
+ * the same ones PropertyUtilsBean finds), and kept. Merges after the first just call the getters and setters.
+ */
 public class BeanMerger {
 
     private static final PropertyUtilsBean propertyUtils = new PropertyUtilsBean();
 
+    private static final ClassValue<ConcurrentMap<PlanKey, MergePlan>> plans = new ClassValue<ConcurrentMap<PlanKey, MergePlan>>() {
+        @Override protected ConcurrentMap<PlanKey, MergePlan> computeValue(Class<?> type) { return new ConcurrentHashMap<>(); }
+    };
+
     public static void mergeProperties(Object dest, Object orig) {
         merge(dest, orig, AlwaysCopy.INSTANCE);
     }
@@ -23,24 +44,72 @@ public class BeanMerger {
         if (dest == null) throw new IllegalArgumentException ("No destination bean specified");
         if (orig == null) throw new IllegalArgumentException("No origin bean specified");
 
-        PropertyDescriptor[] origDescriptors = propertyUtils.getPropertyDescriptors(orig);
-        for (PropertyDescriptor origDescriptor : origDescriptors) {
-            String name = origDescriptor.getName();
-            if ("class".equals(name)) {
-                continue; // No point in trying to set an object's class
+        final ConcurrentMap<PlanKey, MergePlan> origPlans = plans.get(orig.getClass());
+        final PlanKey key = new PlanKey(dest.getClass(), evaluator);
+        MergePlan plan = origPlans.get(key);
+        if (plan == null) {
+            plan = new MergePlan(orig.getClass(), dest.getClass(), evaluator);
+            origPlans.putIfAbsent(key, plan);
+        }
+        plan.merge(dest, orig);
+    }
+
+    @AllArgsConstructor @EqualsAndHashCode
+    private static final class PlanKey {
+        private final Class<?> destClass;
+        private final CopyEvaluator evaluator;
+    }
+
+    // the readable properties of the origin class that are writeable on the destination class
+    private static class MergePlan {
+
+        private final CopyEvaluator evaluator;
+        private final boolean notNull;
+        private final String[] names;
+        private final PropertyAccessor[] getters;
+        private final PropertyAccessor[] setters;
+
+        MergePlan(Class<?> origClass, Class<?> destClass, CopyEvaluator evaluator) {
+            this.evaluator = evaluator;
+            this.notNull = evaluator == NotNull.INSTANCE;
+
+            final Map<String, PropertyDescriptor> destDescriptors = new HashMap<>();
+            for (PropertyDescriptor d : propertyUtils.getPropertyDescriptors(destClass)) destDescriptors.put(d.getName(), d);
+
+            final List<String> names = new ArrayList<>();
+            final List<PropertyAccessor> getters = new ArrayList<>();
+            final List<PropertyAccessor> setters = new ArrayList<>();
+            for (PropertyDescriptor origDescriptor : propertyUtils.getPropertyDescriptors(origClass)) {
+                final String name = origDescriptor.getName();
+                if ("class".equals(name)) {
+                    continue; // No point in trying to set an object's class
+                }
+                final PropertyDescriptor destDescriptor = destDescriptors.get(name);
+                if (destDescriptor == null) continue;
+
+                final Method read = MethodUtils.getAccessibleMethod(origClass, origDescriptor.getReadMethod());
+                final Method write = MethodUtils.getAccessibleMethod(destClass, destDescriptor.getWriteMethod());
+                if (read == null || write == null) continue;
+
+                names.add(name);
+                getters.add(AccessorRegistry.forClass(origClass).accessor(read));
+                setters.add(AccessorRegistry.forClass(destClass).accessor(write));
             }
-            if (propertyUtils.isReadable(orig, name) &&
-                    propertyUtils.isWriteable(dest, name)) {
-                try {
-                    Object value = propertyUtils.getSimpleProperty(orig, name);
-                    if (evaluator.shouldCopy(name, value)) {
-                        propertyUtils.setProperty(dest, name, value);
+            this.names = names.toArray(new String[names.size()]);
+            this.getters = getters.toArray(new PropertyAccessor[getters.size()]);
+            this.setters = setters.toArray(new PropertyAccessor[setters.size()]);
+        }
+
+        void merge(Object dest, Object orig) {
+            try {
+                for (int i=0; i<names.length; i++) {
+                    final Object value = getters[i].get(orig);
+                    if (notNull ? value != null : evaluator.shouldCopy(names[i], value)) {
+                        setters[i].set(dest, value);
                     }
-                } catch (NoSuchMethodException e) {
-                    // Should not happen
-                } catch (Exception e) {
-                    die("Error copying properties: " + e, e);
                 }
+            } catch (Exception e) {
+                die("Error copying properties: " + e, e);
             }
         }
     }
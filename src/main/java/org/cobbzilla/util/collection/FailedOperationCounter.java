@@ -1,47 +1,185 @@
 package org.cobbzilla.util.collection;
 
-import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.experimental.Accessors;
 import lombok.extern.slf4j.Slf4j;
+import org.cobbzilla.util.daemon.SimpleDaemon;
 
-import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 import static org.cobbzilla.util.daemon.ZillaRuntime.now;
 
-@NoArgsConstructor @AllArgsConstructor @Accessors(chain=true) @Slf4j
-public class FailedOperationCounter<T> extends ConcurrentHashMap<T, Map<Long, Long>> {
+/**
+ * Counts recent failures per key, for example failed logins per username.
+ *
+ * Each key has a sliding window of BUCKETS time buckets covering the expiration period, so a key takes the same
+ * small amount of memory no matter how many failures it has. fail and tooManyFailures take constant time and
+ * no locks. A failure stops counting between expiration - expiration/BUCKETS and expiration after it happened.
+ * Changes to expiration apply to keys added after the change.
+ *
+ * Keys are removed by sweep, once their last failure has expired. Call startSweeper to have a daemon thread do this
+ * every expiration period.
+ */
+@NoArgsConstructor @Accessors(chain=true) @Slf4j
+public class FailedOperationCounter<T> extends ConcurrentHashMap<T, FailedOperationCounter.Window> {
+
+    public static final int BUCKETS = 10;
 
     @Getter @Setter private long expiration = TimeUnit.MINUTES.toMillis(5);
     @Getter @Setter private int maxFailures = 1;
 
+    private SimpleDaemon sweeper;
+
+    public FailedOperationCounter (long expiration, int maxFailures) {
+        this.expiration = expiration;
+        this.maxFailures = maxFailures;
+    }
+
     public void fail(T value) {
-        Map<Long, Long> failures = get(value);
-        if (failures == null) {
-            failures = new ConcurrentHashMap<>();
-            put(value, failures);
-        }
         final long ftime = now();
-        failures.put(ftime, ftime);
+        while (true) {
+            Window window = get(value);
+            if (window == null) {
+                final Window created = new Window(ftime, expiration);
+                window = putIfAbsent(value, created);
+                if (window == null) window = created;
+            }
+            if (window.fail(ftime)) return;
+            // the sweeper retired this window: help remove it, and count the failure in a new one
+            remove(value, window);
+        }
     }
 
     public boolean tooManyFailures(T value) {
-        final Map<Long, Long> failures = get(value);
-        if (failures == null) return false;
-        int count = 0;
-        for (Iterator<Long> iter = failures.keySet().iterator(); iter.hasNext();) {
-            Long ftime = iter.next();
-            if (now() - ftime > expiration) {
-                iter.remove();
-            } else {
-                if (++count >= maxFailures) return true;
+        final Window window = get(value);
+        return window != null && window.count(now(), maxFailures) >= maxFailures;
+    }
+
+    /**
+     * Remove keys whose last failure has expired
+     * @return the number of keys removed
+     */
+    public int sweep() {
+        final long now = now();
+        int removed = 0;
+        for (Map.Entry<T, Window> entry : entrySet()) {
+            final Window window = entry.getValue();
+            if (window.retireIfIdle(now) && remove(entry.getKey(), window)) removed++;
+        }
+        return removed;
+    }
+
+    /** Start a daemon thread that calls sweep every expiration period. Does nothing if one is already running */
+    public synchronized FailedOperationCounter<T> startSweeper() {
+        if (sweeper == null) {
+            sweeper = new SimpleDaemon(getClass().getSimpleName()+"-sweeper") {
+                @Override protected long getSleepTime() { return expiration; }
+                @Override protected void process() {
+                    final int removed = sweep();
+                    if (removed > 0) log.debug("sweep: removed "+removed+" idle keys");
+                }
+            };
+            sweeper.start();
+        }
+        return this;
+    }
+
+    public synchronized void stopSweeper() {
+        if (sweeper != null) {
+            sweeper.stop();
+            sweeper = null;
+        }
+    }
+
+    /**
+     * The recent failures of one key. Each bucket is a long holding the number of the time interval it counts
+     * (in the upper bits) and the failures seen in that interval (in the lower COUNT_BITS bits),
+     * so a bucket is moved to a new interval and counted in one compareAndSet.
+     *
+     * A window is retired by setting lastFailure to DEAD, with a compareAndSet that only succeeds if no failure was
+     * recorded since the window was found idle. fail sets lastFailure the same way before counting, so a failure is
+     * either counted in a live window or not counted here at all.
+     */
+    public static class Window {
+
+        private static final int COUNT_BITS = 24;
+        private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+        private static final long DEAD = Long.MIN_VALUE;
+
+        private static final AtomicLongFieldUpdater<Window> LAST_FAILURE = AtomicLongFieldUpdater.newUpdater(Window.class, "lastFailure");
+
+        private final long start;
+        private final long expiration;
+        private final long width;
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private volatile long lastFailure;
+
+        Window(long start, long expiration) {
+            this.start = start;
+            this.expiration = expiration;
+            this.width = Math.max(1, expiration / BUCKETS);
+            this.lastFailure = start;
+        }
+
+        // intervals count from 1, so an unused bucket (0) is never current
+        private long interval(long time) { return Math.max(0, time - start) / width + 1; }
+
+        /** @return false if the window has been retired, in which case nothing was counted */
+        boolean fail(long time) {
+            while (true) {
+                final long last = lastFailure;
+                if (last == DEAD) return false;
+                // if time <= last this leaves the value unchanged, and a sweeper may still retire the window.
+                // it can only do so once last has expired, and then so has this failure, so it would not count anyway
+                if (LAST_FAILURE.compareAndSet(this, last, Math.max(last, time))) break;
+            }
+            final long interval = interval(time);
+            final int i = (int) (interval % BUCKETS);
+            while (true) {
+                final long bucket = buckets.get(i);
+                final long next;
+                if (bucket >>> COUNT_BITS >= interval) {
+                    // same interval (or a later one, if the clock went back): count it there
+                    next = (bucket & COUNT_MASK) == COUNT_MASK ? bucket : bucket + 1;
+                } else {
+                    next = (interval << COUNT_BITS) | 1;
+                }
+                if (buckets.compareAndSet(i, bucket, next)) break;
+            }
+            return true;
+        }
+
+        /** @return true if the window is retired: it already was, or had no failures within expiration and now is */
+        boolean retireIfIdle(long time) {
+            final long last = lastFailure;
+            if (last == DEAD) return true;
+            return time - last > expiration && LAST_FAILURE.compareAndSet(this, last, DEAD);
+        }
+
+        /**
+         * @param time the current time
+         * @param stopAt stop counting once this many failures are found
+         * @return the number of failures within the window, up to stopAt
+         */
+        int count(long time, int stopAt) {
+            final long interval = interval(time);
+            int count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                final long bucket = buckets.get(i);
+                final long bucketInterval = bucket >>> COUNT_BITS;
+                if (bucketInterval > interval - BUCKETS && bucketInterval <= interval) {
+                    count += (int) (bucket & COUNT_MASK);
+                    if (count >= stopAt) return count;
+                }
             }
+            return count;
         }
-        return false;
     }
+
 }
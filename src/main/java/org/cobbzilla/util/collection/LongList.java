@@ -0,0 +1,77 @@
+package org.cobbzilla.util.collection;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of longs, backed by a long array, without boxing. Nothing allocates except add when the
+ * array has to grow, and toArray. This class is not thread-safe.
+ */
+public class LongList {
+
+    public static final int DEFAULT_CAPACITY = 10;
+
+    private long[] elements;
+    private int size;
+
+    public LongList () { this(DEFAULT_CAPACITY); }
+
+    public LongList (int capacity) { elements = new long[Math.max(1, capacity)]; }
+
+    public int size() { return size; }
+
+    public boolean isEmpty() { return size == 0; }
+
+    public void add(long value) {
+        if (size == elements.length) elements = Arrays.copyOf(elements, grow(elements.length));
+        elements[size++] = value;
+    }
+
+    private static int grow(int length) {
+        final int grown = length + (length >> 1) + 1;
+        return grown < 0 ? Integer.MAX_VALUE - 8 : grown;
+    }
+
+    public long get(int index) {
+        checkIndex(index);
+        return elements[index];
+    }
+
+    /** @return the previous value at the index */
+    public long set(int index, long value) {
+        checkIndex(index);
+        final long prev = elements[index];
+        elements[index] = value;
+        return prev;
+    }
+
+    /** @return the value that was removed. later values move down one place */
+    public long removeAt(int index) {
+        checkIndex(index);
+        final long prev = elements[index];
+        System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+        size--;
+        return prev;
+    }
+
+    public int indexOf(long value) {
+        for (int i = 0; i < size; i++) {
+            if (elements[i] == value) return i;
+        }
+        return -1;
+    }
+
+    public boolean contains(long value) { return indexOf(value) != -1; }
+
+    /** Empty the list. The array is kept, for reuse */
+    public void clear() { size = 0; }
+
+    /** @return a new array of the values in the list */
+    public long[] toArray() { return Arrays.copyOf(elements, size); }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("index "+index+", size "+size);
+    }
+
+    @Override public String toString() { return Arrays.toString(toArray()); }
+
+}
@@ -0,0 +1,207 @@
+package org.cobbzilla.util.collection;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+
+import static org.cobbzilla.util.daemon.ZillaRuntime.die;
+
+/**
+ * A map of long keys to long values, without boxing. Keys and values are stored side by side in one long array,
+ * using open addressing with linear probing, so an entry takes 16 bytes (about 21 at the maximum load) instead of
+ * the 60-80 bytes of a HashMap entry with boxed Longs. get, put, add and remove do not allocate, except when put
+ * has to grow the table.
+ *
+ * Lookups of missing keys return noValue, which is 0 unless set in the constructor.
+ * This class is not thread-safe.
+ */
+public class LongLongMap {
+
+    public static final int DEFAULT_CAPACITY = 16;
+
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final int MAX_SLOTS = 1 << 29;
+
+    @Getter private final long noValue;
+
+    // key of slot i is at 2*i, its value at 2*i+1. key 0 marks an empty slot, so the 0 key is kept separately
+    private long[] table;
+    private int mask;
+    private int maxFill;
+    private int size;
+
+    private boolean hasZeroKey;
+    private long zeroValue;
+
+    public LongLongMap () { this(DEFAULT_CAPACITY, 0); }
+
+    public LongLongMap (int expectedSize) { this(expectedSize, 0); }
+
+    public LongLongMap (int expectedSize, long noValue) {
+        this.noValue = noValue;
+        allocate(slotsFor(expectedSize));
+    }
+
+    private static int slotsFor(int expectedSize) {
+        final long needed = Math.max(2, (long) Math.ceil(expectedSize / LOAD_FACTOR));
+        if (needed > MAX_SLOTS) die("LongLongMap: too many entries: "+expectedSize);
+        return Integer.highestOneBit((int) needed - 1) << 1;
+    }
+
+    private void allocate(int slots) {
+        table = new long[slots * 2];
+        mask = slots - 1;
+        maxFill = (int) (slots * LOAD_FACTOR);
+    }
+
+    private int slot(long key) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private int find(long key) {
+        int slot = slot(key);
+        while (true) {
+            final long k = table[2 * slot];
+            if (k == key) return slot;
+            if (k == 0) return -1;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public int size() { return hasZeroKey ? size + 1 : size; }
+
+    public boolean isEmpty() { return size() == 0; }
+
+    public boolean containsKey(long key) { return key == 0 ? hasZeroKey : find(key) != -1; }
+
+    /**
+     * @param key the key to find
+     * @return the value for the key, or noValue if the key is not in the map
+     */
+    public long get(long key) {
+        if (key == 0) return hasZeroKey ? zeroValue : noValue;
+        final int slot = find(key);
+        return slot == -1 ? noValue : table[2 * slot + 1];
+    }
+
+    /**
+     * @param key the key to add
+     * @param value the value to add
+     * @return the previous value for the key, or noValue if the key was not in the map
+     */
+    public long put(long key, long value) {
+        if (key == 0) {
+            final long prev = hasZeroKey ? zeroValue : noValue;
+            hasZeroKey = true;
+            zeroValue = value;
+            return prev;
+        }
+        int slot = slot(key);
+        while (true) {
+            final long k = table[2 * slot];
+            if (k == key) {
+                final long prev = table[2 * slot + 1];
+                table[2 * slot + 1] = value;
+                return prev;
+            }
+            if (k == 0) {
+                table[2 * slot] = key;
+                table[2 * slot + 1] = value;
+                if (++size > maxFill) rehash();
+                return noValue;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Add to the value for a key, for using the map as a set of counters.
+     * @param key the key
+     * @param delta the amount to add. a key that is not in the map starts from noValue
+     * @return the new value for the key
+     */
+    public long add(long key, long delta) {
+        if (key == 0) {
+            zeroValue = (hasZeroKey ? zeroValue : noValue) + delta;
+            hasZeroKey = true;
+            return zeroValue;
+        }
+        final int slot = find(key);
+        if (slot != -1) return table[2 * slot + 1] += delta;
+        put(key, noValue + delta);
+        return noValue + delta;
+    }
+
+    /**
+     * @param key the key to remove
+     * @return the value the key had, or noValue if the key was not in the map
+     */
+    public long remove(long key) {
+        if (key == 0) {
+            if (!hasZeroKey) return noValue;
+            hasZeroKey = false;
+            return zeroValue;
+        }
+        final int slot = find(key);
+        if (slot == -1) return noValue;
+        final long prev = table[2 * slot + 1];
+        shiftKeys(slot);
+        size--;
+        return prev;
+    }
+
+    // empty a slot, moving back any later entries that would no longer be found past the gap
+    private void shiftKeys(int pos) {
+        while (true) {
+            final int last = pos;
+            long k;
+            while (true) {
+                pos = (pos + 1) & mask;
+                k = table[2 * pos];
+                if (k == 0) {
+                    table[2 * last] = 0;
+                    table[2 * last + 1] = 0;
+                    return;
+                }
+                final int slot = slot(k);
+                if (last <= pos ? (last >= slot || slot > pos) : (last >= slot && slot > pos)) break;
+            }
+            table[2 * last] = k;
+            table[2 * last + 1] = table[2 * pos + 1];
+        }
+    }
+
+    private void rehash() {
+        final long[] old = table;
+        final int slots = (mask + 1) * 2;
+        if (slots > MAX_SLOTS) die("LongLongMap: too many entries: "+size());
+        allocate(slots);
+        for (int i = 0; i < old.length; i += 2) {
+            final long k = old[i];
+            if (k == 0) continue;
+            int slot = slot(k);
+            while (table[2 * slot] != 0) slot = (slot + 1) & mask;
+            table[2 * slot] = k;
+            table[2 * slot + 1] = old[i + 1];
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(table, 0);
+        size = 0;
+        hasZeroKey = false;
+    }
+
+    /** @return a new array of all the keys in the map, in no particular order */
+    public long[] keys() {
+        final long[] keys = new long[size()];
+        int i = 0;
+        if (hasZeroKey) keys[i++] = 0;
+        for (int j = 0; j < table.length; j += 2) {
+            if (table[j] != 0) keys[i++] = table[j];
+        }
+        return keys;
+    }
+
+}
@@ -0,0 +1,152 @@
+package org.cobbzilla.util.collection;
+
+import java.util.Arrays;
+
+import static org.cobbzilla.util.daemon.ZillaRuntime.die;
+
+/**
+ * A map of long keys to lists of long values, like a MappyList of Longs but without boxing.
+ *
+ * All values live in one long array. Each value takes two slots: the value, and the index of the value added
+ * before it for the same key. A LongLongMap maps each key to its most recently added value. So add and getLatest
+ * do not allocate (except to grow the array), and getAll walks the values of one key. Space freed by remove is
+ * reclaimed by copying the live values to a new array, once more than half the array is unused.
+ *
+ * This class is not thread-safe.
+ */
+public class LongMappy {
+
+    private static final long NONE = -1;
+
+    // key -> index of its most recently added node
+    private final LongLongMap last;
+
+    // node i: value at 2*i, index of the previous node for the same key (or NONE) at 2*i+1
+    private long[] nodes;
+    private int nodeCount;
+    private int garbage;
+
+    public LongMappy () { this(LongLongMap.DEFAULT_CAPACITY, LongLongMap.DEFAULT_CAPACITY); }
+
+    public LongMappy (int expectedKeys, int expectedValues) {
+        last = new LongLongMap(expectedKeys, NONE);
+        nodes = new long[Math.max(2, expectedValues * 2)];
+    }
+
+    /** @return the number of keys */
+    public int size() { return last.size(); }
+
+    /** @return the total number of values */
+    public int totalSize() { return nodeCount - garbage; }
+
+    public boolean isEmpty() { return last.isEmpty(); }
+
+    public boolean containsKey(long key) { return last.containsKey(key); }
+
+    /** Add a value to the list for a key */
+    public void add(long key, long value) {
+        if (2 * nodeCount == nodes.length) grow();
+        final int node = nodeCount++;
+        nodes[2 * node] = value;
+        nodes[2 * node + 1] = last.put(key, node);
+    }
+
+    private void grow() {
+        final long length = (long) nodes.length + (nodes.length >> 1) + 2;
+        if (length > Integer.MAX_VALUE - 8) die("LongMappy: too many values: "+nodeCount);
+        nodes = Arrays.copyOf(nodes, (int) (length & ~1L));
+    }
+
+    /**
+     * @param key the key to find
+     * @param defaultValue what to return if the key is not found
+     * @return the value most recently added for the key, or defaultValue if the key is not found
+     */
+    public long getLatest(long key, long defaultValue) {
+        final long node = last.get(key);
+        return node == NONE ? defaultValue : nodes[(int) (2 * node)];
+    }
+
+    /** @return the number of values for the key */
+    public int count(long key) {
+        int count = 0;
+        for (long node = last.get(key); node != NONE; node = nodes[(int) (2 * node + 1)]) count++;
+        return count;
+    }
+
+    public boolean contains(long key, long value) {
+        for (long node = last.get(key); node != NONE; node = nodes[(int) (2 * node + 1)]) {
+            if (nodes[(int) (2 * node)] == value) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Add the values for a key to a list, in the order they were added
+     * @param key the key to find
+     * @param values the list to add to
+     * @return the number of values added to the list
+     */
+    public int getAll(long key, LongList values) {
+        final int count = count(key);
+        final int start = values.size();
+        for (int i = 0; i < count; i++) values.add(0);
+        int i = start + count;
+        for (long node = last.get(key); node != NONE; node = nodes[(int) (2 * node + 1)]) {
+            values.set(--i, nodes[(int) (2 * node)]);
+        }
+        return count;
+    }
+
+    /** @return a new array of the values for a key, in the order they were added */
+    public long[] getAll(long key) {
+        final LongList values = new LongList(count(key));
+        getAll(key, values);
+        return values.toArray();
+    }
+
+    /**
+     * Remove a key and all its values
+     * @param key the key to remove
+     * @return the number of values removed
+     */
+    public int remove(long key) {
+        final int count = count(key);
+        if (last.remove(key) == NONE) return 0;
+        garbage += count;
+        if (garbage > nodeCount / 2) compact();
+        return count;
+    }
+
+    public void clear() {
+        last.clear();
+        nodeCount = 0;
+        garbage = 0;
+    }
+
+    /** @return a new array of all the keys, in no particular order */
+    public long[] keys() { return last.keys(); }
+
+    // copy the values of every key to a new array, dropping the nodes of removed keys
+    private void compact() {
+        final long[] old = nodes;
+        final int live = nodeCount - garbage;
+        nodes = new long[2 * (live + (live >> 1) + 1)];
+        nodeCount = 0;
+        garbage = 0;
+        final LongList chain = new LongList();
+        for (long key : last.keys()) {
+            chain.clear();
+            for (long node = last.get(key); node != NONE; node = old[(int) (2 * node + 1)]) chain.add(node);
+            long prev = NONE;
+            for (int i = chain.size() - 1; i >= 0; i--) {
+                final int node = nodeCount++;
+                nodes[2 * node] = old[(int) (2 * chain.get(i))];
+                nodes[2 * node + 1] = prev;
+                prev = node;
+            }
+            last.put(key, prev);
+        }
+    }
+
+}
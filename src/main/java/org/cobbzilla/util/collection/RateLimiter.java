@@ -0,0 +1,150 @@
+package org.cobbzilla.util.collection;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.experimental.Accessors;
+import lombok.extern.slf4j.Slf4j;
+import org.cobbzilla.util.daemon.SimpleDaemon;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.cobbzilla.util.daemon.ZillaRuntime.die;
+import static org.cobbzilla.util.daemon.ZillaRuntime.now;
+
+/**
+ * Per-key token buckets. Each key can take up to burst tokens at once, and gets refillTokens tokens back every
+ * refillPeriod milliseconds, up to burst.
+ *
+ * A bucket is one AtomicLong: the time (in microseconds) at which the bucket would be full again, given the tokens
+ * taken so far. Refills are worked out from that and now() when tokens are taken, so nothing runs in the background
+ * to refill buckets, and tryAcquire is a map lookup and a compareAndSet. Denied requests take no tokens.
+ *
+ * Keys are removed by sweep, once their buckets are full again. Call startSweeper to have a daemon thread do this
+ * every refillPeriod. sweep retires a bucket by a compareAndSet from the value it found full to DEAD, so tokens taken
+ * in between are never lost with the bucket: either the take or the retirement fails, and is retried or skipped.
+ */
+@NoArgsConstructor @Accessors(chain=true) @Slf4j
+public class RateLimiter<T> extends ConcurrentHashMap<T, AtomicLong> {
+
+    private static final long DEAD = Long.MIN_VALUE;
+
+    @Getter private long burst = 10;
+    @Getter private long refillTokens = 10;
+    @Getter private long refillPeriod = TimeUnit.SECONDS.toMillis(1);
+
+    private SimpleDaemon sweeper;
+
+    public RateLimiter (long burst, long refillTokens, long refillPeriod) {
+        setBurst(burst);
+        setRefillTokens(refillTokens);
+        setRefillPeriod(refillPeriod);
+    }
+
+    public RateLimiter<T> setBurst(long burst) {
+        if (burst <= 0) die("setBurst: burst must be positive: "+burst);
+        this.burst = burst;
+        return this;
+    }
+
+    public RateLimiter<T> setRefillTokens(long refillTokens) {
+        if (refillTokens <= 0) die("setRefillTokens: refillTokens must be positive: "+refillTokens);
+        this.refillTokens = refillTokens;
+        return this;
+    }
+
+    public RateLimiter<T> setRefillPeriod(long refillPeriod) {
+        if (refillPeriod <= 0) die("setRefillPeriod: refillPeriod must be positive: "+refillPeriod);
+        this.refillPeriod = refillPeriod;
+        return this;
+    }
+
+    // microseconds for one token to refill
+    private long interval() { return Math.max(1, refillPeriod * 1000 / refillTokens); }
+
+    private static long nowMicros() { return now() * 1000; }
+
+    public boolean tryAcquire(T key) { return tryAcquire(key, 1); }
+
+    /**
+     * @param key the key
+     * @param tokens the number of tokens to take
+     * @return true if the key's bucket had the tokens, which are now taken. false if not, in which case none are taken
+     */
+    public boolean tryAcquire(T key, int tokens) {
+        if (tokens <= 0) die("tryAcquire: tokens must be positive: "+tokens);
+        final long now = nowMicros();
+        final long interval = interval();
+        final long cost = interval * tokens;
+        final long limit = interval * burst;
+        while (true) {
+            AtomicLong bucket = get(key);
+            if (bucket == null) {
+                final AtomicLong created = new AtomicLong();
+                bucket = putIfAbsent(key, created);
+                if (bucket == null) bucket = created;
+            }
+            while (true) {
+                final long full = bucket.get();
+                if (full == DEAD) break;
+                final long next = Math.max(full, now) + cost;
+                if (next - now > limit) return false;
+                if (bucket.compareAndSet(full, next)) return true;
+            }
+            // the sweeper retired this bucket: help remove it, and take the tokens from a new one
+            remove(key, bucket);
+        }
+    }
+
+    /** @return the number of tokens the key could take now */
+    public long getAvailable(T key) {
+        final AtomicLong bucket = get(key);
+        if (bucket == null) return burst;
+        final long full = bucket.get();
+        if (full == DEAD) return burst;
+        final long interval = interval();
+        final long now = nowMicros();
+        final long available = (now + interval * burst - Math.max(full, now)) / interval;
+        return Math.max(0, Math.min(burst, available));
+    }
+
+    /**
+     * Remove keys whose buckets are full
+     * @return the number of keys removed
+     */
+    public int sweep() {
+        final long now = nowMicros();
+        int removed = 0;
+        for (Map.Entry<T, AtomicLong> entry : entrySet()) {
+            final AtomicLong bucket = entry.getValue();
+            final long full = bucket.get();
+            if ((full == DEAD || (full <= now && bucket.compareAndSet(full, DEAD))) && remove(entry.getKey(), bucket)) removed++;
+        }
+        return removed;
+    }
+
+    /** Start a daemon thread that calls sweep every refillPeriod. Does nothing if one is already running */
+    public synchronized RateLimiter<T> startSweeper() {
+        if (sweeper == null) {
+            sweeper = new SimpleDaemon(getClass().getSimpleName()+"-sweeper") {
+                @Override protected long getSleepTime() { return refillPeriod; }
+                @Override protected void process() {
+                    final int removed = sweep();
+                    if (removed > 0) log.debug("sweep: removed "+removed+" idle keys");
+                }
+            };
+            sweeper.start();
+        }
+        return this;
+    }
+
+    public synchronized void stopSweeper() {
+        if (sweeper != null) {
+            sweeper.stop();
+            sweeper = null;
+        }
+    }
+
+}
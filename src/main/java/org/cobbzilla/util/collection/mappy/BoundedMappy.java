@@ -0,0 +1,184 @@
+package org.cobbzilla.util.collection.mappy;
+
+import lombok.Getter;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.cobbzilla.util.daemon.ZillaRuntime.die;
+import static org.cobbzilla.util.daemon.ZillaRuntime.now;
+
+/**
+ * A Mappy that can be used as a cache: the number of values it holds is bounded, no matter how many keys are added.
+ *
+ * When adding values takes the total over maxValues, whole keys are evicted, least recently used first.
+ * Looking up a key (get, getAll, getAllIfPresent, containsKey) or adding values to it counts as using it.
+ * No key holds more than maxValuesPerKey values; adding more drops the first values in the collection
+ * (the oldest, for lists). If ttl is positive, a key and its values expire that many milliseconds after the key was added.
+ *
+ * Unlike Mappy, getAll does not add a key that is not found; it returns a new empty collection. Collections returned by
+ * getAll and getAllIfPresent must be treated as read-only, since changes made to them are not counted.
+ *
+ * Writes and lookups share one lock, which keeps the usage order. Iterating over the whole map (values, flatten, etc)
+ * does not take that lock and does not count as using any key.
+ *
+ * @param <K> key class
+ * @param <V> value class
+ * @param <C> collection class
+ */
+public abstract class BoundedMappy<K, V, C extends Collection<V>> extends Mappy<K, V, C> {
+
+    @Getter private final int maxValues;
+    @Getter private final int maxValuesPerKey;
+    @Getter private final long ttl;
+
+    // key -> when it was added, least recently used first. also the lock for all writes and lookups
+    private final LinkedHashMap<K, Long> keys = new LinkedHashMap<>(16, 0.75f, true);
+    private int total = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    public BoundedMappy (int maxValues, int maxValuesPerKey) { this(maxValues, maxValuesPerKey, 0); }
+
+    public BoundedMappy (int maxValues, int maxValuesPerKey, long ttl) {
+        if (maxValues <= 0 || maxValuesPerKey <= 0 || maxValuesPerKey > maxValues) {
+            die("BoundedMappy: invalid limits, maxValues="+maxValues+", maxValuesPerKey="+maxValuesPerKey);
+        }
+        this.maxValues = maxValues;
+        this.maxValuesPerKey = maxValuesPerKey;
+        this.ttl = ttl;
+    }
+
+    /** @return the number of lookups that found their key */
+    public long getHits () { return hits.get(); }
+
+    /** @return the number of lookups that did not find their key, including keys that had expired */
+    public long getMisses () { return misses.get(); }
+
+    /** @return the number of keys evicted to stay within maxValues */
+    public long getEvictions () { return evictions.get(); }
+
+    /** @return the number of keys removed because their ttl passed */
+    public long getExpirations () { return expirations.get(); }
+
+    @Override public int totalSize () { synchronized (keys) { return total; } }
+
+    @Override public boolean containsKey(Object key) {
+        synchronized (keys) { return live((K) key) != null; }
+    }
+
+    @Override public C getAllIfPresent (K key) {
+        synchronized (keys) {
+            final C collection = live(key);
+            (collection == null ? misses : hits).incrementAndGet();
+            return collection;
+        }
+    }
+
+    @Override public C getAll (K key) {
+        final C collection = getAllIfPresent(key);
+        return collection != null ? collection : newCollection();
+    }
+
+    @Override public V put(K key, V value) {
+        synchronized (keys) {
+            final C collection = liveOrNew(key);
+            final V rval = contains(collection, value) ? value : null;
+            add(key, collection, Collections.singletonList(value));
+            return rval;
+        }
+    }
+
+    @Override public void putAll(K key, Collection<V> values) {
+        if (values.isEmpty()) return;
+        synchronized (keys) {
+            add(key, liveOrNew(key), values);
+        }
+    }
+
+    @Override public V remove(Object key) {
+        synchronized (keys) {
+            keys.remove(key);
+            final C collection = super.getAllIfPresent((K) key);
+            if (collection != null) total -= size(collection);
+            return super.remove(key);
+        }
+    }
+
+    @Override public void clear() {
+        synchronized (keys) {
+            keys.clear();
+            total = 0;
+            super.clear();
+        }
+    }
+
+    // the collection for a key, or null if the key is not found or has expired. caller holds the lock
+    private C live(K key) {
+        final Long added = keys.get(key);
+        if (added == null) return null;
+        if (ttl > 0 && now() - added > ttl) {
+            remove(key);
+            expirations.incrementAndGet();
+            return null;
+        }
+        return super.getAllIfPresent(key);
+    }
+
+    private C liveOrNew(K key) {
+        final C collection = live(key);
+        if (collection != null) return collection;
+        keys.put(key, now());
+        return super.getAll(key);
+    }
+
+    private void add(K key, C collection, Collection<V> values) {
+        if (isConcurrent()) {
+            total += addAndTrim(collection, values);
+        } else {
+            synchronized (collection) {
+                total += addAndTrim(collection, values);
+            }
+        }
+        evict(key);
+    }
+
+    private int addAndTrim(C collection, Collection<V> values) {
+        final int before = collection.size();
+        collection.addAll(values);
+        final Iterator<V> iter = collection.iterator();
+        while (collection.size() > maxValuesPerKey && iter.hasNext()) {
+            iter.next();
+            iter.remove();
+        }
+        return collection.size() - before;
+    }
+
+    // evict least recently used keys, other than the one just written, until the total is within bounds
+    private void evict(K keep) {
+        final Iterator<K> iter = keys.keySet().iterator();
+        while (total > maxValues && iter.hasNext()) {
+            final K key = iter.next();
+            if (key.equals(keep)) continue;
+            iter.remove();
+            final C collection = super.getAllIfPresent(key);
+            if (collection != null) total -= size(collection);
+            super.remove(key);
+            evictions.incrementAndGet();
+        }
+    }
+
+    private boolean contains(C collection, V value) {
+        if (isConcurrent()) return collection.contains(value);
+        synchronized (collection) { return collection.contains(value); }
+    }
+
+    private int size(C collection) {
+        if (isConcurrent()) return collection.size();
+        synchronized (collection) { return collection.size(); }
+    }
+
+}
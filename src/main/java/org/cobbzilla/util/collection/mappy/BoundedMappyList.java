@@ -0,0 +1,16 @@
+package org.cobbzilla.util.collection.mappy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BoundedMappyList<K, V> extends BoundedMappy<K, V, List<V>> {
+
+    public BoundedMappyList (int maxValues, int maxValuesPerKey) { super(maxValues, maxValuesPerKey); }
+
+    public BoundedMappyList (int maxValues, int maxValuesPerKey, long ttl) { super(maxValues, maxValuesPerKey, ttl); }
+
+    @Override protected List<V> newCollection() { return new ArrayList<>(); }
+
+    @Override protected V firstInCollection(List<V> collection) { return collection.get(0); }
+
+}
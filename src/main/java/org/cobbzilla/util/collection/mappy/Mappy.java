@@ -15,9 +15,14 @@ import static org.cobbzilla.util.reflect.ReflectionUtil.getTypeParam;
  *
  * It can be viewed either as a mapping of K->V or as K->C&gt;V&lt;
  *
- * Mappy objects are meant to be short-lived. While methods are generally thread-safe, the getter will create a new empty
+ * Mappy objects are meant to be short-lived. While methods are generally thread-safe, getAll will create a new empty
  * collection every time a key is not found. So it makes a horrible cache. Mappy instances are best suited to be value
- * objects of limited scope.
+ * objects of limited scope. Use getAllIfPresent or get to look up keys without adding them.
+ *
+ * Writers do not share a lock: the collection for a key is created at most once (with putIfAbsent), and values are
+ * added while holding the lock of that key's collection only. Subclasses whose collections are already thread-safe
+ * (see MappyConcurrentSortedSet) override isConcurrent and are not locked at all. Code that iterates a collection
+ * returned by getAll while other threads may be writing to it should synchronize on that collection.
  *
  * @param <K> key class
  * @param <V> value class
@@ -29,7 +34,7 @@ public abstract class Mappy<K, V, C extends Collection<V>> implements Map<K, V>
     private final ConcurrentHashMap<K, C> map;
 
     @Getter(lazy=true) private final Class<C> valueClass = initValueClass();
-    private Class<C> initValueClass() { return getTypeParam(getClass(), 2); }
+    private Class<C> initValueClass() { return getTypeParam(getClass(), Mappy.class, 2); }
 
     public Mappy ()         { map = new ConcurrentHashMap<>(); }
     public Mappy (int size) { map = new ConcurrentHashMap<>(size); }
@@ -40,6 +45,12 @@ public abstract class Mappy<K, V, C extends Collection<V>> implements Map<K, V>
      */
     protected abstract C newCollection();
 
+    /**
+     * For subclasses whose collections are safe for concurrent use, so they need not be locked
+     * @return true if the collections returned by newCollection are thread-safe
+     */
+    protected boolean isConcurrent() { return false; }
+
     /**
      * @return the number of key mappings
      */
@@ -57,7 +68,12 @@ public abstract class Mappy<K, V, C extends Collection<V>> implements Map<K, V>
     /**
      * @return true if this Mappy contains no values. It may contain keys whose collections have no values.
      */
-    @Override public boolean isEmpty() { return flatten().isEmpty(); }
+    @Override public boolean isEmpty() {
+        for (C collection : allValues()) {
+            if (!collection.isEmpty()) return false;
+        }
+        return true;
+    }
 
     @Override public boolean containsKey(Object key) { return map.containsKey(key); }
 
@@ -67,8 +83,15 @@ public abstract class Mappy<K, V, C extends Collection<V>> implements Map<K, V>
      */
     @Override public boolean containsValue(Object value) {
         for (C collection : allValues()) {
-            //noinspection SuspiciousMethodCalls
-            if (collection.contains(value)) return true;
+            if (isConcurrent()) {
+                //noinspection SuspiciousMethodCalls
+                if (collection.contains(value)) return true;
+            } else {
+                synchronized (collection) {
+                    //noinspection SuspiciousMethodCalls
+                    if (collection.contains(value)) return true;
+                }
+            }
         }
         return false;
     }
@@ -78,8 +101,20 @@ public abstract class Mappy<K, V, C extends Collection<V>> implements Map<K, V>
      * @return the first value in the collection for they key, or null if the collection is empty
      */
     @Override public V get(Object key) {
-        final C collection = getAll((K) key);
-        return collection.isEmpty() ? null : firstInCollection(collection);
+        final C collection = getAllIfPresent((K) key);
+        if (collection == null) return null;
+        if (isConcurrent()) return first(collection);
+        synchronized (collection) {
+            return first(collection);
+        }
+    }
+
+    private V first(C collection) {
+        try {
+            return collection.isEmpty() ? null : firstInCollection(collection);
+        } catch (NoSuchElementException e) {
+            return null; // emptied by another thread between the two calls
+        }
     }
 
     protected V firstInCollection(C collection) { return collection.iterator().next(); }
@@ -90,14 +125,20 @@ public abstract class Mappy<K, V, C extends Collection<V>> implements Map<K, V>
      * @return the collection of values for the key, which may be empty
      */
     public C getAll (K key) {
-        C collection = map.get(key);
-        if (collection == null) {
-            collection = newCollection();
-            map.put(key, collection);
-        }
-        return collection;
+        final C collection = map.get(key);
+        if (collection != null) return collection;
+        final C created = newCollection();
+        final C existing = map.putIfAbsent(key, created);
+        return existing == null ? created : existing;
     }
 
+    /**
+     * Get the collection of values for a key, without adding the key if it is not found.
+     * @param key the key to find
+     * @return the collection of values for the key, or null if the key is not in the map
+     */
+    public C getAllIfPresent (K key) { return map.get(key); }
+
     /**
      * Add a mapping.
      * @param key the key to add
@@ -105,18 +146,19 @@ public abstract class Mappy<K, V, C extends Collection<V>> implements Map<K, V>
      * @return the value passed in, if the map already contained the item. null otherwise.
      */
     @Override public V put(K key, V value) {
-        V rval = null;
-        synchronized (map) {
-            C group = map.get(key);
-            if (group == null) {
-                group = newCollection();
-                map.put(key, group);
-            } else {
-                rval = group.contains(value) ? value : null;
-            }
+        final C group = getAll(key);
+        if (isConcurrent()) {
+            // for sets, add returns false exactly when the value was already there
+            if (group instanceof Set) return group.add(value) ? null : value;
+            final V rval = group.contains(value) ? value : null;
+            group.add(value);
+            return rval;
+        }
+        synchronized (group) {
+            final V rval = group.contains(value) ? value : null;
             group.add(value);
+            return rval;
         }
-        return rval;
     }
 
     /**
@@ -126,8 +168,11 @@ public abstract class Mappy<K, V, C extends Collection<V>> implements Map<K, V>
      */
     @Override public V remove(Object key) {
         final C group = map.remove(key);
-        if (group == null || group.isEmpty()) return null; // empty case should never happen, but just in case
-        return group.iterator().next();
+        if (group == null) return null;
+        if (isConcurrent()) return first(group);
+        synchronized (group) {
+            return first(group);
+        }
     }
 
     /**
@@ -146,11 +191,13 @@ public abstract class Mappy<K, V, C extends Collection<V>> implements Map<K, V>
      * @param values the values to add to the key's collection
      */
     public void putAll(K key, Collection<V> values) {
-        synchronized (map) {
-            C collection = getAll(key);
-            if (collection == null) collection = newCollection();
+        final C collection = getAll(key);
+        if (isConcurrent()) {
             collection.addAll(values);
-            map.put(key, collection);
+        } else {
+            synchronized (collection) {
+                collection.addAll(values);
+            }
         }
     }
 
@@ -161,32 +208,47 @@ public abstract class Mappy<K, V, C extends Collection<V>> implements Map<K, V>
 
     @Override public Set<K> keySet() { return map.keySet(); }
 
-    @Override public Collection<V> values() {
-        final List<V> vals = new ArrayList<>();
-        for (C collection : map.values()) vals.addAll(collection);
-        return vals;
-    }
+    @Override public Collection<V> values() { return flatten(); }
+
     @Override public Set<Entry<K, V>> entrySet() {
         final Set<Entry<K, V>> entries = new HashSet<>();
         for (Entry<K, C> entry : map.entrySet()) {
-            for (V item : entry.getValue()) {
+            for (V item : copyOf(entry.getValue())) {
                 entries.add(new AbstractMap.SimpleEntry<K, V>(entry.getKey(), item));
             }
         }
         return entries;
     }
 
+    // copy of a collection that is safe to iterate while other threads write to it
+    private Collection<V> copyOf(C collection) {
+        if (isConcurrent()) return collection;
+        synchronized (collection) {
+            return new ArrayList<>(collection);
+        }
+    }
+
+    private void addAllTo(Collection<V> values, C collection) {
+        if (isConcurrent()) {
+            values.addAll(collection);
+        } else {
+            synchronized (collection) {
+                values.addAll(collection);
+            }
+        }
+    }
+
     public Collection<C> allValues() { return map.values(); }
     public Set<Entry<K, C>> allEntrySets() { return map.entrySet(); }
 
     public List<V> flatten() {
         final List<V> values = new ArrayList<>();
-        for (C collection : allValues()) values.addAll(collection);
+        for (C collection : allValues()) addAllTo(values, collection);
         return values;
     }
 
     public List<V> flatten(Collection<V> values) {
-        for (C collection : allValues()) values.addAll(collection);
+        for (C collection : allValues()) addAllTo(values, collection);
         return new ArrayList<>(values);
     }
 
@@ -199,9 +261,9 @@ public abstract class Mappy<K, V, C extends Collection<V>> implements Map<K, V>
         if (totalSize() != other.totalSize()) return false;
 
         for (K key : keySet()) {
-            if (!other.containsKey(key)) return false;
-            final Collection otherValues = other.getAll(key);
-            final Collection thisValues = getAll(key);
+            final Collection otherValues = other.getAllIfPresent(key);
+            final Collection thisValues = getAllIfPresent(key);
+            if (otherValues == null || thisValues == null) return false;
             if (otherValues.size() != thisValues.size()) return false;
             for (Object value : thisValues) {
                 if (!otherValues.contains(value)) return false;
@@ -213,9 +275,9 @@ public abstract class Mappy<K, V, C extends Collection<V>> implements Map<K, V>
     @Override public int hashCode() {
         int result = new Integer(totalSize()).hashCode();
         result = 31 * result + (valueClass != null ? valueClass.hashCode() : 0);
-        for (K key : keySet()) {
-            result = 31 * result + (key.hashCode() + 13);
-            for (V value : getAll(key)) {
+        for (Entry<K, C> entry : allEntrySets()) {
+            result = 31 * result + (entry.getKey().hashCode() + 13);
+            for (V value : copyOf(entry.getValue())) {
                 result = 31 * result + (value == null ? 0 : value.hashCode());
             }
         }
@@ -224,9 +286,9 @@ public abstract class Mappy<K, V, C extends Collection<V>> implements Map<K, V>
 
     @Override public String toString() {
         final StringBuilder b = new StringBuilder();
-        for (K key : keySet()) {
+        for (Entry<K, C> entry : allEntrySets()) {
             if (b.length() > 0) b.append(" | ");
-            b.append(key).append("->(").append(StringUtil.toString(getAll(key), ", ")).append(")");
+            b.append(entry.getKey()).append("->(").append(StringUtil.toString(copyOf(entry.getValue()), ", ")).append(")");
         }
         return "{"+b.toString()+"}";
     }
@@ -21,4 +21,6 @@ public class MappyConcurrentSortedSet<K, V> extends Mappy<K, V, ConcurrentSkipLi
 
     @Override protected V firstInCollection(ConcurrentSkipListSet<V> collection) { return collection.first(); }
 
+    @Override protected boolean isConcurrent() { return true; }
+
 }
@@ -7,9 +7,8 @@ import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 
 import java.io.*;
-import java.nio.file.FileSystems;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 
@@ -501,4 +500,41 @@ public class FileUtil {
         }
     }
 
+    /**
+     * Find files matching a glob pattern, like "conf/*.json". Use ** to match across directories.
+     * Only the part of the tree below the last directory without wildcards is searched.
+     * @param pattern the pattern. if it has no wildcards, it is returned as-is (whether it exists or not)
+     * @return the matching files, sorted by path
+     * @throws IOException if a directory cannot be read
+     */
+    public static List<File> glob (String pattern) throws IOException {
+        final int wildcard = indexOfWildcard(pattern);
+        if (wildcard == -1) return Collections.singletonList(new File(pattern));
+
+        final int lastSlash = pattern.lastIndexOf('/', wildcard);
+        final String base = lastSlash == -1 ? "" : lastSlash == 0 ? "/" : pattern.substring(0, lastSlash);
+        final Path start = Paths.get(base.isEmpty() ? "." : base);
+        if (!Files.isDirectory(start)) return Collections.emptyList();
+
+        final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        final List<File> found = new ArrayList<>();
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (matcher.matches(base.isEmpty() ? start.relativize(file) : file)) found.add(file.toFile());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        Collections.sort(found);
+        return found;
+    }
+
+    private static int indexOfWildcard (String pattern) {
+        for (int i=0; i<pattern.length(); i++) {
+            switch (pattern.charAt(i)) {
+                case '*': case '?': case '[': case '{': return i;
+            }
+        }
+        return -1;
+    }
+
 }
@@ -0,0 +1,256 @@
+package org.cobbzilla.util.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import java.util.*;
+
+/**
+ * Compares two JSON documents and produces the JsonEditOperations that turn the first into the second.
+ * Applying the operations in order with JsonEdit yields the second document.
+ *
+ * Notes:
+ *  - both documents must be JSON objects
+ *  - changed fields of an object are sent as one write to that object (writes to objects merge fields)
+ *  - arrays of objects that all have a unique idField are matched up by id, so removing an element does not
+ *    make every element after it look changed. other arrays are compared position by position.
+ *  - an array is written whole when that is smaller than patching it, or when it holds arrays (which cannot be addressed)
+ */
+@Accessors(chain=true)
+public class JsonDiff {
+
+    public static final String DEFAULT_ID_FIELD = "id";
+
+    private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+
+    /** the field that identifies elements of arrays of objects. if null, arrays are always compared by position */
+    @Getter @Setter private String idField = DEFAULT_ID_FIELD;
+
+    public JsonDiff () {}
+
+    public JsonDiff (String idField) { this.idField = idField; }
+
+    /**
+     * @param from the original document
+     * @param to the new document
+     * @return operations that change from into to. empty if the documents are equal.
+     */
+    public List<JsonEditOperation> diff (JsonNode from, JsonNode to) { return patch(from, to).ops; }
+
+    public List<JsonEditOperation> diff (String from, String to) throws Exception {
+        return diff(JsonUtil.fromJson(from, JsonNode.class), JsonUtil.fromJson(to, JsonNode.class));
+    }
+
+    /**
+     * The same changes as diff, as an RFC 6902 JSON Patch. Arrays are keyed the same way, so
+     * elements are removed, patched in place or appended, never moved.
+     * @param from the original document
+     * @param to the new document
+     * @return the JSON Patch document
+     */
+    public ArrayNode toJsonPatch (JsonNode from, JsonNode to) { return patch(from, to).jsonPatch; }
+
+    private Patch patch (JsonNode from, JsonNode to) {
+        if (from == null || !from.isObject() || to == null || !to.isObject()) {
+            throw new IllegalArgumentException("diff: both documents must be JSON objects");
+        }
+        final Patch patch = new Patch();
+        diffObject("", (ObjectNode) from, (ObjectNode) to, patch);
+        return patch;
+    }
+
+    private void diffObject(String path, ObjectNode from, ObjectNode to, Patch patch) {
+
+        for (Iterator<String> names = from.fieldNames(); names.hasNext(); ) {
+            final String name = names.next();
+            if (!to.has(name)) patch.delete(fieldPath(path, name));
+        }
+
+        final ObjectNode changed = NODES.objectNode();
+        final Patch nested = new Patch();
+        for (Iterator<Map.Entry<String, JsonNode>> fields = to.fields(); fields.hasNext(); ) {
+            final Map.Entry<String, JsonNode> field = fields.next();
+            final JsonNode oldValue = from.get(field.getKey());
+            final JsonNode newValue = field.getValue();
+            if (oldValue != null && oldValue.equals(newValue)) continue;
+
+            if (oldValue != null && oldValue.isObject() && newValue.isObject()) {
+                diffObject(fieldPath(path, field.getKey()), (ObjectNode) oldValue, (ObjectNode) newValue, nested);
+
+            } else if (oldValue == null || !oldValue.isArray() || !newValue.isArray()
+                    || !diffArray(fieldPath(path, field.getKey()), (ArrayNode) oldValue, (ArrayNode) newValue, nested)) {
+                changed.set(field.getKey(), newValue);
+            }
+        }
+        if (changed.size() > 0) patch.merge(path, changed);
+        patch.addAll(nested);
+    }
+
+    // returns false if the array should just be written whole
+    private boolean diffArray(String path, ArrayNode from, ArrayNode to, Patch patch) {
+        if (hasArrays(from) || hasArrays(to)) return false;
+
+        final Patch arrayPatch = new Patch();
+        if (!diffKeyedArray(path, from, to, arrayPatch)) diffPositionalArray(path, from, to, arrayPatch);
+
+        // each element written costs one operation, so past this point a single write of the whole array is smaller
+        if (arrayPatch.ops.size() > to.size()) return false;
+        patch.addAll(arrayPatch);
+        return true;
+    }
+
+    private boolean diffKeyedArray(String path, ArrayNode from, ArrayNode to, Patch patch) {
+        final Map<JsonNode, Integer> fromIndex = idIndex(from);
+        final Map<JsonNode, Integer> toIndex = idIndex(to);
+        if (fromIndex == null || toIndex == null) return false;
+
+        // elements can only be deleted or appended, so the kept elements must stay in the same order,
+        // and new elements must all come after them
+        final List<JsonNode> kept = new ArrayList<>();
+        for (JsonNode element : from) {
+            final JsonNode id = element.get(idField);
+            if (toIndex.containsKey(id)) kept.add(id);
+        }
+        for (int i=0; i<kept.size(); i++) {
+            if (!to.get(i).get(idField).equals(kept.get(i))) return false;
+        }
+
+        for (int i=from.size()-1; i>=0; i--) {
+            if (!toIndex.containsKey(from.get(i).get(idField))) patch.delete(path+"["+i+"]");
+        }
+        for (int i=0; i<kept.size(); i++) {
+            diffElement(path, i, from.get(fromIndex.get(kept.get(i))), to.get(i), patch);
+        }
+        for (int i=kept.size(); i<to.size(); i++) patch.append(path, to.get(i));
+        return true;
+    }
+
+    private void diffPositionalArray(String path, ArrayNode from, ArrayNode to, Patch patch) {
+        final int common = Math.min(from.size(), to.size());
+        for (int i=from.size()-1; i>=common; i--) patch.delete(path+"["+i+"]");
+        for (int i=0; i<common; i++) diffElement(path, i, from.get(i), to.get(i), patch);
+        for (int i=common; i<to.size(); i++) patch.append(path, to.get(i));
+    }
+
+    private void diffElement(String path, int index, JsonNode from, JsonNode to, Patch patch) {
+        if (from.equals(to)) return;
+        final String elementPath = path + "[" + index + "]";
+        if (from.isObject() && to.isObject()) {
+            diffObject(elementPath, (ObjectNode) from, (ObjectNode) to, patch);
+        } else {
+            patch.replace(elementPath, to);
+        }
+    }
+
+    // map of id -> index, or null if the array cannot be keyed by idField
+    private Map<JsonNode, Integer> idIndex(ArrayNode array) {
+        if (idField == null) return null;
+        final Map<JsonNode, Integer> index = new HashMap<>(array.size() * 2);
+        for (int i=0; i<array.size(); i++) {
+            final JsonNode id = array.get(i).get(idField);
+            if (id == null || id.isNull() || !id.isValueNode() || index.put(id, i) != null) return null;
+        }
+        return index;
+    }
+
+    private boolean hasArrays(ArrayNode array) {
+        for (JsonNode element : array) if (element.isArray()) return true;
+        return false;
+    }
+
+    private static String fieldPath(String path, String name) {
+        if (name.isEmpty() || name.contains("'") || name.contains("[") || name.contains("]")) {
+            throw new IllegalArgumentException("diff: field name cannot be used in a path: "+name);
+        }
+        return JsonPath.fieldPath(path, name);
+    }
+
+    // the operations of a diff, kept both as JsonEditOperations and as RFC 6902 operations
+    private static class Patch {
+        private final List<JsonEditOperation> ops = new ArrayList<>();
+        private final ArrayNode jsonPatch = NODES.arrayNode();
+
+        // writing an object into an existing object sets each of its fields
+        void merge(String path, ObjectNode fields) {
+            write(path.isEmpty() ? null : path, fields);
+            final String pointer = pointer(path);
+            for (Iterator<Map.Entry<String, JsonNode>> iter = fields.fields(); iter.hasNext(); ) {
+                final Map.Entry<String, JsonNode> field = iter.next();
+                jsonPatch.add(patchOp("add", pointer + "/" + escape(field.getKey()), field.getValue()));
+            }
+        }
+
+        void replace(String elementPath, JsonNode value) {
+            write(elementPath, value);
+            jsonPatch.add(patchOp("replace", pointer(elementPath), value));
+        }
+
+        void append(String arrayPath, JsonNode value) {
+            write(arrayPath + "[]", value);
+            jsonPatch.add(patchOp("add", pointer(arrayPath) + "/-", value));
+        }
+
+        void delete(String path) {
+            ops.add(new JsonEditOperation().setType(JsonEditOperationType.delete).setPath(path));
+            jsonPatch.add(patchOp("remove", pointer(path), null));
+        }
+
+        void addAll(Patch other) {
+            ops.addAll(other.ops);
+            jsonPatch.addAll(other.jsonPatch);
+        }
+
+        private void write(String path, JsonNode value) {
+            ops.add(new JsonEditOperation().setType(JsonEditOperationType.write).setPath(path).setJson(value.toString()));
+        }
+    }
+
+    /**
+     * Build an RFC 7396 JSON Merge Patch. Removed fields become null and arrays are always replaced whole.
+     * Null values inside the new document cannot be represented, they are treated as removals.
+     * @param from the original document
+     * @param to the new document
+     * @return the merge patch, which applied to from yields to
+     */
+    public static JsonNode toMergePatch (JsonNode from, JsonNode to) {
+        if (from == null || !from.isObject() || to == null || !to.isObject()) return to;
+        final ObjectNode patch = NODES.objectNode();
+        for (Iterator<String> names = from.fieldNames(); names.hasNext(); ) {
+            final String name = names.next();
+            if (!to.has(name)) patch.putNull(name);
+        }
+        for (Iterator<Map.Entry<String, JsonNode>> fields = to.fields(); fields.hasNext(); ) {
+            final Map.Entry<String, JsonNode> field = fields.next();
+            final JsonNode oldValue = from.get(field.getKey());
+            if (oldValue == null || !oldValue.equals(field.getValue())) {
+                patch.set(field.getKey(), toMergePatch(oldValue, field.getValue()));
+            }
+        }
+        return patch;
+    }
+
+    private static ObjectNode patchOp(String op, String path, JsonNode value) {
+        final ObjectNode node = NODES.objectNode().put("op", op).put("path", path);
+        if (value != null) node.set("value", value);
+        return node;
+    }
+
+    // RFC 6901 JSON Pointer
+    private static String pointer(String path) {
+        final JsonPath jsonPath = JsonPath.compile(path);
+        final StringBuilder b = new StringBuilder();
+        for (int i=0; i<jsonPath.size(); i++) {
+            b.append('/').append(escape(jsonPath.getName(i)));
+            if (jsonPath.getIndex(i) != -1) b.append('/').append(jsonPath.getIndex(i));
+        }
+        return b.toString();
+    }
+
+    private static String escape(String name) { return name.replace("~", "~0").replace("/", "~1"); }
+
+}
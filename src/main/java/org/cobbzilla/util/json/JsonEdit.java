@@ -1,18 +1,20 @@
 package org.cobbzilla.util.json;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.format.DataFormatDetector;
+import com.fasterxml.jackson.core.format.DataFormatMatcher;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.NullNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.node.ValueNode;
+import lombok.Cleanup;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.experimental.Accessors;
 
-import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.Reader;
+import java.io.*;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -21,6 +23,7 @@ import java.util.Map;
 
 import static org.cobbzilla.util.json.JsonUtil.*;
 import static org.cobbzilla.util.json.JsonUtil.FULL_MAPPER_ALLOW_COMMENTS;
+import static org.cobbzilla.util.string.StringUtil.UTF8cs;
 
 /**
  * Facilitates editing JSON files.
@@ -28,6 +31,10 @@ import static org.cobbzilla.util.json.JsonUtil.FULL_MAPPER_ALLOW_COMMENTS;
  * Notes:
  *  - only one read operation can be specified. the 'edit' method will return the value of the first read operation processed.
  *  - if you write a node that does not exist, it will be created (if it can be)
+ *  - with streaming enabled, the document is edited as it is parsed and never loaded into memory as a whole.
+ *    see JsonStreamEdit for details.
+ *  - binary input (InputStream, File, URL or byte[]) can be either JSON text or Smile (binary JSON), it is detected
+ *    automatically. with smile enabled, edit(OutputStream) writes Smile instead of JSON text.
  */
 @Accessors(chain=true)
 public class JsonEdit {
@@ -36,30 +43,110 @@ public class JsonEdit {
 
     @Getter @Setter private Object jsonData;
     @Getter @Setter private List<JsonEditOperation> operations = new ArrayList<>();
+    @Getter @Setter private boolean streaming = false;
+    @Getter @Setter private boolean smile = false;
+
+    // tells JSON text from Smile by looking at the first few bytes
+    private static final DataFormatDetector FORMAT_DETECTOR = new DataFormatDetector(JSON.getFactory(), FULL_SMILE_MAPPER.getFactory());
 
     public JsonEdit addOperation (JsonEditOperation operation) { operations.add(operation); return this; }
 
+    public boolean hasReadOperation () {
+        for (JsonEditOperation operation : operations) if (operation.isRead()) return true;
+        return false;
+    }
+
+    /**
+     * @return if there is a read operation, the value read. Otherwise the edited document, always as JSON text.
+     * @throws Exception if something goes wrong
+     */
     public String edit () throws Exception {
+        if (streaming && JsonStreamEdit.canStream(this)) {
+            final StringWriter writer = new StringWriter();
+            final String value = edit(writer);
+            return hasReadOperation() ? value : writer.toString();
+        }
+        final Object result = editTree();
+        return hasReadOperation() ? (String) result : JsonUtil.toString(result);
+    }
+
+    /**
+     * Edit the document, writing the result to a Writer. With streaming enabled, the document is never held in memory.
+     * @param out where the edited document will be written
+     * @return if there is a read operation, nothing is written to out and the value read is returned. Otherwise returns null.
+     * @throws Exception if something goes wrong
+     */
+    public String edit (Writer out) throws Exception {
+        if (streaming && JsonStreamEdit.canStream(this)) return new JsonStreamEdit(jsonData, operations).edit(out);
+        final Object result = editTree();
+        if (hasReadOperation()) return (String) result;
+        out.write(JsonUtil.toString(result));
+        out.flush();
+        return null;
+    }
+
+    /**
+     * Edit the document, writing the result to an OutputStream: as Smile if smile is enabled, otherwise as UTF-8 JSON.
+     * The stream is not closed.
+     * @param out where the edited document will be written
+     * @return if there is a read operation, nothing is written to out and the value read is returned. Otherwise returns null.
+     * @throws Exception if something goes wrong
+     */
+    public String edit (OutputStream out) throws Exception {
+        if (!smile) {
+            final Writer writer = new OutputStreamWriter(out, UTF8cs);
+            final String value = edit(writer);
+            writer.flush();
+            return value;
+        }
+        if (streaming && JsonStreamEdit.canStream(this)) return new JsonStreamEdit(jsonData, operations).editSmile(out);
+        final Object result = editTree();
+        if (hasReadOperation()) return (String) result;
+        writer(NOTNULL_SMILE_MAPPER, result).writeValue(out, result);
+        out.flush();
+        return null;
+    }
+
+    // returns the value of the read operation as a String if there is one, otherwise the edited document as plain objects
+    private Object editTree () throws Exception {
 
         JsonNode root = readJson();
         for (JsonEditOperation operation : operations) {
             if (operation.isRead()) return JsonUtil.toString(findNode(root, operation.getPath()));
             root = apply(root, operation);
         }
-        return JsonUtil.toString(JSON.treeToValue(root, Object.class));
+        return JSON.treeToValue(root, Object.class);
     }
 
     private JsonNode readJson() throws IOException {
         if (jsonData instanceof JsonNode) return (JsonNode) jsonData;
-        if (jsonData instanceof InputStream) return JSON.readTree((InputStream) jsonData);
         if (jsonData instanceof Reader) return JSON.readTree((Reader) jsonData);
         if (jsonData instanceof String) return JSON.readTree((String) jsonData);
-        if (jsonData instanceof File) return JSON.readTree((File) jsonData);
-        if (jsonData instanceof URL) return JSON.readTree((URL) jsonData);
-        throw new IllegalArgumentException("jsonData is not a JsonNode, InputStream, Reader, String, File or URL");
+        @Cleanup final JsonParser parser = parser(jsonData);
+        final JsonNode node = JSON.readTree(parser);
+        return node == null ? NullNode.getInstance() : node;
+    }
+
+    /**
+     * @param jsonData the document to parse
+     * @return a parser for the document. binary sources may be JSON text or Smile, the format is detected.
+     * @throws IOException if the source cannot be opened
+     */
+    static JsonParser parser(Object jsonData) throws IOException {
+        if (jsonData instanceof Reader) return JSON.getFactory().createParser((Reader) jsonData);
+        if (jsonData instanceof String) return JSON.getFactory().createParser((String) jsonData);
+        if (jsonData instanceof byte[]) return parser(FORMAT_DETECTOR.findFormat((byte[]) jsonData));
+        if (jsonData instanceof InputStream) return parser(FORMAT_DETECTOR.findFormat((InputStream) jsonData));
+        if (jsonData instanceof File) return parser(FORMAT_DETECTOR.findFormat(new FileInputStream((File) jsonData)));
+        if (jsonData instanceof URL) return parser(FORMAT_DETECTOR.findFormat(((URL) jsonData).openStream()));
+        throw new IllegalArgumentException("jsonData is not a JsonNode, InputStream, Reader, String, byte[], File or URL");
+    }
+
+    private static JsonParser parser(DataFormatMatcher match) throws IOException {
+        return match.hasMatch() ? match.createParserWithMatch() : JSON.getFactory().createParser(match.getDataStream());
     }
 
-    private JsonNode apply(JsonNode root, JsonEditOperation operation) throws IOException {
+    JsonNode apply(JsonNode root, JsonEditOperation operation) throws IOException {
         final List<JsonNode> path = findNodePath(root, operation.getPath());
 
         switch (operation.getType()) {
@@ -24,35 +24,17 @@ public class JsonEditOperation {
 
     public boolean hasIndex () { return getIndex() != null; }
 
-    @JsonIgnore @Getter(lazy=true) private final List<String> tokens = initTokens();
-    private List<String> initTokens() { return JsonUtil.tokenize(path); }
+    @JsonIgnore public JsonPath getJsonPath() { return JsonPath.compile(path); }
 
-    public boolean isEmptyBrackets () {
-        int bracketPos = path.indexOf("[");
-        int bracketClosePos = path.indexOf("]");
-        return bracketPos != -1 && bracketClosePos != -1 && bracketClosePos == bracketPos+1;
-    }
+    @JsonIgnore public List<String> getTokens() { return getJsonPath().getTokens(); }
 
-    public Integer getIndex() {
-        List<String> tokens = getTokens();
-        if (tokens.size() <= 1) return index(path);
-        return index(tokens.get(tokens.size()-1));
-    }
+    public boolean isEmptyBrackets () { return getJsonPath().isEmptyBrackets(); }
 
-    private Integer index(String path) {
-        try {
-            int bracketPos = path.indexOf("[");
-            int bracketClosePos = path.indexOf("]");
-            if (bracketPos != -1 && bracketClosePos != -1 && bracketClosePos > bracketPos) {
-                return new Integer(path.substring(bracketPos + 1, bracketClosePos));
-            }
-        } catch (Exception ignored) {}
-        return null;
-    }
+    public Integer getIndex() { return getJsonPath().getLastIndex(); }
 
     public String getName() {
         final List<String> tokens = getTokens();
-        if (tokens.size() <= 1) return stripEmptyTrailingBrackets(path);
+        if (tokens.isEmpty()) return stripEmptyTrailingBrackets(path);
         return stripEmptyTrailingBrackets(tokens.get(tokens.size() - 1));
     }
 
@@ -0,0 +1,110 @@
+package org.cobbzilla.util.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges one JSON tree into another, in place.
+ *
+ * Notes:
+ *  - objects are merged field by field. fields that are not in the update are left alone.
+ *  - an object is never replaced by a non-object (this is how JsonUtil.mergeNodes has always behaved)
+ *  - nodes from the update are put into the target as-is, not copied. don't modify the update afterwards.
+ *  - fields whose value is unchanged are not touched, and are not reported as changed
+ *  - arrays are replaced, unless idField is set and every element of both arrays is an object with a
+ *    unique value for it. then update elements are merged into the target element with the same id,
+ *    or appended if there is none. target elements that are not in the update are kept.
+ */
+@Accessors(chain=true)
+public class JsonMerge {
+
+    /** the field that identifies elements of arrays of objects. if null, arrays are always replaced */
+    @Getter @Setter private String idField;
+
+    /** if false, merge returns null instead of the list of changed paths */
+    @Getter @Setter private boolean trackChanges = true;
+
+    public JsonMerge () {}
+
+    public JsonMerge (String idField) { this.idField = idField; }
+
+    /**
+     * @param target the tree to merge into. it is modified.
+     * @param update the values to merge. if it is not an object, nothing is done.
+     * @return the paths (in JsonEdit syntax) of the nodes that were added or replaced, in the order they changed.
+     * returns null if trackChanges is false
+     */
+    public List<String> merge (ObjectNode target, JsonNode update) {
+        final List<String> changed = trackChanges ? new ArrayList<String>() : null;
+        if (update != null && update.isObject()) mergeObject(target, update, "", changed);
+        return changed;
+    }
+
+    private void mergeObject(ObjectNode target, JsonNode update, String path, List<String> changed) {
+        for (Iterator<Map.Entry<String, JsonNode>> fields = update.fields(); fields.hasNext(); ) {
+            final Map.Entry<String, JsonNode> field = fields.next();
+            final String name = field.getKey();
+            final JsonNode value = field.getValue();
+            final JsonNode current = target.get(name);
+
+            if (current != null && current.isObject()) {
+                if (value.isObject()) mergeObject((ObjectNode) current, value, childPath(path, name, changed), changed);
+
+            } else if (current != null && current.isArray() && value.isArray() && idField != null
+                    && mergeArray((ArrayNode) current, (ArrayNode) value, childPath(path, name, changed), changed)) {
+                // merged by id
+
+            } else if (current == null || !current.equals(value)) {
+                target.set(name, value);
+                if (changed != null) changed.add(childPath(path, name, changed));
+            }
+        }
+    }
+
+    // returns false if the arrays cannot be merged by id, and update should replace target
+    private boolean mergeArray(ArrayNode target, ArrayNode update, String path, List<String> changed) {
+        for (JsonNode element : update) if (id(element) == null) return false;
+
+        final int size = target.size();
+        final Map<JsonNode, Integer> index = new HashMap<>(size * 2);
+        for (int i=0; i<size; i++) {
+            final JsonNode id = id(target.get(i));
+            if (id == null || index.put(id, i) != null) return false;
+        }
+
+        for (JsonNode element : update) {
+            final JsonNode id = element.get(idField);
+            final Integer i = index.get(id);
+            if (i == null) {
+                target.add(element);
+                index.put(id, target.size()-1);
+                if (changed != null) changed.add(path + "[" + (target.size()-1) + "]");
+            } else {
+                mergeObject((ObjectNode) target.get(i), element, changed == null ? null : path + "[" + i + "]", changed);
+            }
+        }
+        return true;
+    }
+
+    private JsonNode id(JsonNode element) {
+        if (!element.isObject()) return null;
+        final JsonNode id = element.get(idField);
+        return id == null || id.isNull() || !id.isValueNode() ? null : id;
+    }
+
+    // paths are only built when changes are being tracked
+    private String childPath(String path, String name, List<String> changed) {
+        return changed == null ? null : JsonPath.fieldPath(path, name);
+    }
+
+}
@@ -0,0 +1,192 @@
+package org.cobbzilla.util.json;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.cobbzilla.util.daemon.ZillaRuntime.empty;
+
+/**
+ * A JSON path (like "thing.field1[2]" or "thing.'dotted.name'.field") that has been parsed once into its
+ * segments. Each segment is a field name, optionally followed by an array index "[n]" or empty brackets "[]".
+ *
+ * Use JsonPath.compile to obtain instances: recently used paths are cached, so looking up the same
+ * paths over and over does not re-parse them.
+ */
+public class JsonPath {
+
+    public static final int MAX_CACHED_PATHS = 2000;
+
+    public static final JsonPath EMPTY = new JsonPath("");
+
+    private static final Cache<String, JsonPath> cache = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_PATHS).build();
+
+    public static JsonPath compile(String path) {
+        if (empty(path)) return EMPTY;
+        JsonPath jsonPath = cache.getIfPresent(path);
+        if (jsonPath == null) {
+            jsonPath = new JsonPath(path);
+            cache.put(path, jsonPath);
+        }
+        return jsonPath;
+    }
+
+    @Getter private final String path;
+    @Getter private final List<String> tokens;
+
+    private final String[] names;
+    private final int[] indexes;
+    private final boolean[] brackets;
+
+    private JsonPath(String path) {
+        this.path = path;
+        this.tokens = empty(path) ? Collections.<String>emptyList() : Collections.unmodifiableList(tokenize(path));
+        final int size = tokens.size();
+        names = new String[size];
+        indexes = new int[size];
+        brackets = new boolean[size];
+        for (int i=0; i<size; i++) {
+            final String token = tokens.get(i);
+            final int bracketPos = token.indexOf('[');
+            final int bracketClosePos = token.indexOf(']');
+            indexes[i] = -1;
+            if (bracketPos != -1 && bracketClosePos != -1 && bracketClosePos > bracketPos) {
+                brackets[i] = true;
+                if (bracketClosePos != bracketPos+1) {
+                    indexes[i] = Integer.parseInt(token.substring(bracketPos + 1, bracketClosePos));
+                }
+                names[i] = token.substring(0, bracketPos);
+            } else {
+                names[i] = token;
+            }
+        }
+    }
+
+    static List<String> tokenize(String path) {
+        final List<String> pathParts = new ArrayList<>();
+        final StringBuilder pathToken = new StringBuilder();
+        boolean collectingQuotedToken = false;
+        for (int i=0; i<path.length(); i++) {
+            final char c = path.charAt(i);
+            if (c == '\'') {
+                collectingQuotedToken = !collectingQuotedToken;
+
+            } else if (collectingQuotedToken) {
+                pathToken.append(c);
+
+            } else if (c == '.' && pathToken.length() > 0) {
+                pathParts.add(pathToken.toString());
+                pathToken.setLength(0);
+
+            } else {
+                pathToken.append(c);
+            }
+        }
+        if (collectingQuotedToken) throw new IllegalArgumentException("Unterminated single quote in: "+path);
+        if (pathToken.length() > 0) pathParts.add(pathToken.toString());
+        return pathParts;
+    }
+
+    /**
+     * @param path a path, or an empty string for the root
+     * @param name a field name
+     * @return the path of the named field under path. names containing dots are quoted.
+     */
+    static String fieldPath(String path, String name) {
+        final String segment = name.indexOf('.') == -1 ? name : "'" + name + "'";
+        return empty(path) ? segment : path + "." + segment;
+    }
+
+    public int size() { return names.length; }
+
+    public boolean isEmpty() { return names.length == 0; }
+
+    /**
+     * @param i segment number
+     * @return the field name of the segment, without any brackets
+     */
+    public String getName(int i) { return names[i]; }
+
+    /**
+     * @param i segment number
+     * @return the array index of the segment, or -1 if it has no index
+     */
+    public int getIndex(int i) { return indexes[i]; }
+
+    /**
+     * @param i segment number
+     * @return true if the segment has brackets, with or without an index
+     */
+    public boolean hasBrackets(int i) { return brackets[i]; }
+
+    /**
+     * @param i segment number
+     * @return true if the segment ends with empty brackets, meaning "append to this array"
+     */
+    public boolean isAppend(int i) { return brackets[i] && indexes[i] == -1; }
+
+    /**
+     * @return true if the first segment with brackets has empty brackets. lookups stop at this segment.
+     */
+    public boolean isEmptyBrackets() {
+        for (int i=0; i<brackets.length; i++) {
+            if (brackets[i]) return indexes[i] == -1;
+        }
+        return false;
+    }
+
+    /**
+     * @return the array index of the last segment, or null if it has none
+     */
+    public Integer getLastIndex() {
+        return isEmpty() || indexes[size()-1] == -1 ? null : indexes[size()-1];
+    }
+
+    /**
+     * Advance a parser to the value at this path. Everything else is skipped without being parsed into objects.
+     * @param parser a parser positioned on (or just before) the start of a document
+     * @return true if the parser is now positioned on the first token of the value at this path, false if the path was not found
+     * @throws IOException if the parser throws one
+     */
+    public boolean seek(JsonParser parser) throws IOException {
+        JsonToken token = parser.getCurrentToken() == null ? parser.nextToken() : parser.getCurrentToken();
+        if (token == null) return false;
+        for (int i=0; i<names.length; i++) {
+            if (token != JsonToken.START_OBJECT || !seekField(parser, names[i]) || isAppend(i)) return false;
+            if (indexes[i] != -1 && (parser.getCurrentToken() != JsonToken.START_ARRAY || !seekIndex(parser, indexes[i]))) return false;
+            token = parser.getCurrentToken();
+        }
+        return true;
+    }
+
+    // leaves the parser on the value of the named field
+    private static boolean seekField(JsonParser parser, String name) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            parser.nextToken();
+            if (field.equals(name)) return true;
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    // leaves the parser on the array element at index
+    private static boolean seekIndex(JsonParser parser, int index) throws IOException {
+        int i = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (i++ == index) return true;
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    @Override public String toString() { return path; }
+
+}
@@ -0,0 +1,392 @@
+package org.cobbzilla.util.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.Cleanup;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.cobbzilla.util.daemon.ZillaRuntime.empty;
+import static org.cobbzilla.util.io.FileUtil.temp;
+import static org.cobbzilla.util.json.JsonEdit.JSON;
+import static org.cobbzilla.util.json.JsonUtil.FULL_MAPPER;
+import static org.cobbzilla.util.json.JsonUtil.FULL_SMILE_MAPPER;
+import static org.cobbzilla.util.json.JsonUtil.NOTNULL_SMILE_MAPPER;
+
+/**
+ * Applies the operations of a JsonEdit by driving a JsonParser straight into a JsonGenerator.
+ * The document is never held in memory as a tree, so memory use does not depend on the size of the input.
+ *
+ * Output is the same as the tree-based JsonEdit, except that:
+ *  - deleting a path whose parent does not exist is a no-op
+ *  - using an array index or empty brackets on a node that is not an array is an error
+ *
+ * Operations whose paths overlap (one is a prefix of the other) cannot be applied in the same pass.
+ * Each group of non-overlapping operations gets its own pass, with a temp file holding the document between passes.
+ * Temp files are written as Smile (binary JSON), which is smaller and faster to parse again.
+ */
+class JsonStreamEdit {
+
+    private final Object jsonData;
+    private final List<JsonEditOperation> operations;
+
+    // nulls are only dropped when writing the final output; earlier passes must keep them, like the tree does
+    private boolean finalPass;
+
+    JsonStreamEdit(Object jsonData, List<JsonEditOperation> operations) {
+        this.jsonData = jsonData;
+        this.operations = operations;
+    }
+
+    /**
+     * @param edit the edit to check
+     * @return true if every operation in the edit can be applied by a streaming pass
+     */
+    static boolean canStream(JsonEdit edit) {
+        if (edit.getJsonData() == null || edit.getJsonData() instanceof JsonNode) return false;
+        for (JsonEditOperation operation : edit.getOperations()) {
+            if (operation.isRead() || empty(operation.getPath())) continue;
+            // only the last path segment may index into an array
+            final JsonPath path = operation.getJsonPath();
+            for (int i=0; i<path.size()-1; i++) {
+                if (path.hasBrackets(i)) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Write the edited document to out as JSON
+     * @param out where to write the document
+     * @return if a read operation was found, the value read (which may be null) and nothing is written to out.
+     * otherwise returns null.
+     * @throws Exception if something goes wrong
+     */
+    String edit(Writer out) throws Exception {
+        @Cleanup final JsonGenerator gen = FULL_MAPPER.getFactory().createGenerator(out);
+        gen.setPrettyPrinter(new DefaultPrettyPrinter());
+        return edit(gen);
+    }
+
+    /**
+     * Write the edited document to out as Smile (binary JSON)
+     * @param out where to write the document
+     * @return the same as edit(Writer)
+     * @throws Exception if something goes wrong
+     */
+    String editSmile(OutputStream out) throws Exception {
+        @Cleanup final JsonGenerator gen = NOTNULL_SMILE_MAPPER.getFactory().createGenerator(out);
+        return edit(gen);
+    }
+
+    private String edit(JsonGenerator out) throws Exception {
+        out.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        Object source = jsonData;
+        final List<File> temps = new ArrayList<>();
+        try {
+            List<StreamOp> pass = new ArrayList<>();
+            for (JsonEditOperation operation : operations) {
+                final StreamOp op = new StreamOp(operation);
+                if (operation.isRead() || overlaps(pass, op)) {
+                    if (!pass.isEmpty()) {
+                        final File temp = temp(".sml");
+                        temps.add(temp);
+                        @Cleanup final OutputStream tempOut = new FileOutputStream(temp);
+                        @Cleanup final JsonGenerator gen = FULL_SMILE_MAPPER.getFactory().createGenerator(tempOut);
+                        runPass(source, gen, pass, false);
+                        source = temp;
+                        pass = new ArrayList<>();
+                    }
+                    if (operation.isRead()) return read(source, op);
+                }
+                pass.add(op);
+            }
+            runPass(source, out, pass, true);
+            return null;
+
+        } finally {
+            for (File temp : temps) temp.delete();
+        }
+    }
+
+    private boolean overlaps(List<StreamOp> pass, StreamOp op) {
+        for (StreamOp other : pass) {
+            final int len = Math.min(op.steps.size(), other.steps.size());
+            boolean prefix = true;
+            for (int i=0; i<len; i++) {
+                if (!op.steps.get(i).equals(other.steps.get(i))) { prefix = false; break; }
+            }
+            if (prefix) return true;
+        }
+        return false;
+    }
+
+    private void runPass(Object source, JsonGenerator gen, List<StreamOp> ops, boolean finalPass) throws IOException {
+        this.finalPass = finalPass;
+        @Cleanup final JsonParser parser = JsonEdit.parser(source);
+        if (parser.nextToken() == null) throw new IllegalArgumentException("no JSON document found");
+        for (StreamOp op : ops) {
+            if (op.steps.isEmpty() && op.isDelete()) throw new IllegalArgumentException("Cannot delete root");
+        }
+        copyValue(parser, gen, ops, 0);
+        gen.flush();
+    }
+
+    private String read(Object source, StreamOp op) throws IOException {
+        @Cleanup final JsonParser parser = JsonEdit.parser(source);
+        if (!op.operation.getJsonPath().seek(parser)) return null;
+        return JsonUtil.toString(parser.readValueAsTree());
+    }
+
+    private void copyValue(JsonParser parser, JsonGenerator gen, List<StreamOp> ops, int depth) throws IOException {
+        switch (parser.getCurrentToken()) {
+            case START_OBJECT:
+                copyObject(parser, gen, ops, depth);
+                break;
+            case START_ARRAY:
+                copyArray(parser, gen, ops, depth);
+                break;
+            default:
+                if (!ops.isEmpty()) throw new IllegalArgumentException("Cannot append to node (is a "+parser.getCurrentToken()+"): "+ops.get(0).getPath());
+                gen.copyCurrentEvent(parser);
+        }
+    }
+
+    private void copyObject(JsonParser parser, JsonGenerator gen, List<StreamOp> ops, int depth) throws IOException {
+
+        // are we writing an object into this one? (overlapping ops are never in the same pass, so there is at most one)
+        ObjectNode merge = null;
+        for (StreamOp op : ops) {
+            if (op.steps.size() == depth) {
+                if (!op.data.isObject()) throw new IllegalArgumentException("Cannot write a non-object to root: "+op.data);
+                merge = (ObjectNode) op.data;
+            } else if (op.steps.get(depth).name == null) {
+                throw new IllegalArgumentException("Cannot index into node (is an object): "+op.getPath());
+            }
+        }
+        final List<String> merged = merge == null ? null : new ArrayList<String>();
+        final List<StreamOp> found = ops.isEmpty() ? null : new ArrayList<StreamOp>();
+
+        gen.writeStartObject();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+
+            if (merge != null && merge.has(field)) {
+                writeField(gen, field, merge.get(field));
+                merged.add(field);
+                parser.skipChildren();
+                continue;
+            }
+
+            final List<StreamOp> childOps = childOps(ops, field, depth, found);
+            if (childOps.size() == 1 && childOps.get(0).steps.size() == depth+1) {
+                // this field is the target of the operation
+                final StreamOp op = childOps.get(0);
+                if (op.isDelete()) {
+                    parser.skipChildren();
+
+                } else if ((token == JsonToken.START_OBJECT && op.data.isObject()) || token == JsonToken.START_ARRAY) {
+                    gen.writeFieldName(field);
+                    copyValue(parser, gen, childOps, depth+1);
+
+                } else {
+                    writeField(gen, field, op.data);
+                    parser.skipChildren();
+                }
+
+            } else if (finalPass && token == JsonToken.VALUE_NULL && childOps.isEmpty()) {
+                // null fields are not written by the tree-based JsonEdit either
+
+            } else {
+                gen.writeFieldName(field);
+                copyValue(parser, gen, childOps, depth+1);
+            }
+        }
+
+        if (merge != null) {
+            for (Iterator<Map.Entry<String, JsonNode>> iter = merge.fields(); iter.hasNext(); ) {
+                final Map.Entry<String, JsonNode> entry = iter.next();
+                if (!merged.contains(entry.getKey())) writeField(gen, entry.getKey(), entry.getValue());
+            }
+        }
+
+        // create anything that was missing, applying the operations in order just like the tree-based JsonEdit would
+        if (found != null && found.size() < ops.size()) {
+            final ObjectNode added = new ObjectNode(JSON.getNodeFactory());
+            for (StreamOp op : ops) {
+                if (op.isDelete() || op.steps.size() == depth || found.contains(op)) continue;
+                new JsonEdit().apply(added, op.relativeTo(depth));
+            }
+            for (Iterator<Map.Entry<String, JsonNode>> iter = added.fields(); iter.hasNext(); ) {
+                final Map.Entry<String, JsonNode> entry = iter.next();
+                writeField(gen, entry.getKey(), entry.getValue());
+            }
+        }
+        gen.writeEndObject();
+    }
+
+    private List<StreamOp> childOps(List<StreamOp> ops, String field, int depth, List<StreamOp> found) {
+        if (ops.isEmpty()) return ops;
+        final List<StreamOp> childOps = new ArrayList<>();
+        for (StreamOp op : ops) {
+            if (op.steps.size() > depth && field.equals(op.steps.get(depth).name)) {
+                childOps.add(op);
+                found.add(op);
+            }
+        }
+        return childOps;
+    }
+
+    private void copyArray(JsonParser parser, JsonGenerator gen, List<StreamOp> ops, int depth) throws IOException {
+
+        StreamOp target = null;
+        final List<StreamOp> appends = new ArrayList<>();
+        for (StreamOp op : ops) {
+            if (op.steps.size() == depth) {
+                target = op;
+            } else {
+                final Step step = op.steps.get(depth);
+                if (step.name != null) throw new IllegalArgumentException("Cannot append to node (is an array): "+op.getPath());
+                if (step.append) {
+                    if (op.isDelete()) throw new IllegalArgumentException("Cannot delete without an index: "+op.getPath());
+                    appends.add(op);
+                }
+            }
+        }
+        if (target != null && !target.hasIndex()) appends.add(target);
+
+        gen.writeStartArray();
+        int index = 0;
+        boolean replaced = false;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            final int i = index++;
+            if (target != null && target.hasIndex() && target.getIndex() == i) {
+                writeValue(gen, target.data);
+                parser.skipChildren();
+                replaced = true;
+                continue;
+            }
+
+            final List<StreamOp> elementOps = new ArrayList<>();
+            for (StreamOp op : ops) {
+                if (op.steps.size() > depth && op.steps.get(depth).index == i) elementOps.add(op);
+            }
+            if (elementOps.size() == 1 && elementOps.get(0).steps.size() == depth+1) {
+                // this element is the target of the operation
+                final StreamOp op = elementOps.get(0);
+                final JsonToken token = parser.getCurrentToken();
+                if (op.isDelete()) {
+                    parser.skipChildren();
+
+                } else if ((token == JsonToken.START_OBJECT && op.data.isObject()) || token == JsonToken.START_ARRAY) {
+                    copyValue(parser, gen, elementOps, depth+1);
+
+                } else {
+                    writeValue(gen, op.data);
+                    parser.skipChildren();
+                }
+            } else {
+                copyValue(parser, gen, elementOps, depth+1);
+            }
+        }
+        if (target != null && target.hasIndex() && !replaced) {
+            throw new IllegalArgumentException("Index "+target.getIndex()+" out of bounds: "+target.getPath());
+        }
+        for (StreamOp op : ops) {
+            if (op.isWrite() && op.steps.size() > depth) {
+                final Step step = op.steps.get(depth);
+                if (!step.append && step.index >= index) throw new IllegalArgumentException("Cannot append to node (index "+step.index+" out of bounds): "+op.getPath());
+            }
+        }
+        for (StreamOp op : appends) writeValue(gen, op.data);
+        gen.writeEndArray();
+    }
+
+    private void writeField(JsonGenerator gen, String name, JsonNode value) throws IOException {
+        if (value == null || (finalPass && value.isNull())) return;
+        gen.writeFieldName(name);
+        writeValue(gen, value);
+    }
+
+    // serialize the same way the tree-based JsonEdit does, so output is identical
+    private void writeValue(JsonGenerator gen, JsonNode value) throws IOException {
+        if (finalPass) {
+            gen.writeObject(JSON.treeToValue(value, Object.class));
+        } else {
+            gen.writeTree(value);
+        }
+    }
+
+    private static class Step {
+        public final String name;
+        public final int index;
+        public final boolean append;
+
+        Step(String name) { this.name = name; this.index = -1; this.append = false; }
+        Step(int index, boolean append) { this.name = null; this.index = index; this.append = append; }
+
+        @Override public boolean equals(Object o) {
+            if (!(o instanceof Step)) return false;
+            final Step other = (Step) o;
+            return index == other.index && append == other.append && (name == null ? other.name == null : name.equals(other.name));
+        }
+
+        @Override public int hashCode() { return 31 * (name == null ? 0 : name.hashCode()) + index + (append ? 1 : 0); }
+    }
+
+    private static class StreamOp {
+
+        private final JsonEditOperation operation;
+        private final List<Step> steps = new ArrayList<>();
+        private final JsonNode data;
+
+        StreamOp(JsonEditOperation operation) throws IOException {
+            this.operation = operation;
+            this.data = operation.getType() == JsonEditOperationType.write ? operation.getNode() : null;
+            final JsonPath path = operation.getJsonPath();
+            for (int i=0; i<path.size(); i++) {
+                steps.add(new Step(path.getName(i)));
+                if (path.getIndex(i) != -1) {
+                    steps.add(new Step(path.getIndex(i), false));
+                } else if (path.isAppend(i)) {
+                    steps.add(new Step(-1, true));
+                }
+            }
+        }
+
+        public String getPath() { return operation.getPath(); }
+        public boolean isWrite() { return operation.getType() == JsonEditOperationType.write; }
+        public boolean isDelete() { return operation.getType() == JsonEditOperationType.delete; }
+        public boolean hasIndex() { return operation.hasIndex(); }
+        public Integer getIndex() { return operation.getIndex(); }
+
+        // the same operation, with a path relative to the node at depth (only the last token can contain brackets)
+        public JsonEditOperation relativeTo(int depth) {
+            final StringBuilder b = new StringBuilder();
+            final List<String> tokens = operation.getTokens();
+            for (int i=depth; i<tokens.size(); i++) {
+                if (b.length() > 0) b.append(".");
+                final String token = tokens.get(i);
+                if (token.contains(".")) {
+                    b.append("'").append(token).append("'");
+                } else {
+                    b.append(token);
+                }
+            }
+            return new JsonEditOperation()
+                    .setType(operation.getType())
+                    .setPath(b.toString())
+                    .setJson(operation.getJson());
+        }
+    }
+
+}
@@ -1,20 +1,28 @@
 package org.cobbzilla.util.json;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.*;
 import com.fasterxml.jackson.databind.node.*;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.fasterxml.jackson.dataformat.smile.SmileConstants;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
 import org.cobbzilla.util.io.FileSuffixFilter;
 import org.cobbzilla.util.io.FileUtil;
 import org.cobbzilla.util.io.FilenameSuffixFilter;
-import org.cobbzilla.util.io.StreamUtil;
 
 import java.io.*;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 import static org.cobbzilla.util.daemon.ZillaRuntime.die;
 import static org.cobbzilla.util.daemon.ZillaRuntime.empty;
@@ -56,8 +64,24 @@ public class JsonUtil {
 
     public static final ObjectWriter PUBLIC_WRITER = buildWriter(PUBLIC_MAPPER, PublicView.class);
 
-    public static ObjectMapper buildMapper() {
-        return new ObjectMapper()
+    // Smile (binary JSON) counterparts of the mappers above. Smile holds the same data model as JSON, so any
+    // object that can be written as JSON can be written as Smile, and it is more compact and faster to parse.
+    // fields without a @JsonView are excluded from view-filtered output, just like toJson(o, jsonView)
+    public static final ObjectMapper FULL_SMILE_MAPPER = new ObjectMapper(new SmileFactory());
+
+    public static final ObjectMapper NOTNULL_SMILE_MAPPER = new ObjectMapper(new SmileFactory())
+            .configure(MapperFeature.DEFAULT_VIEW_INCLUSION, false)
+            .configure(SerializationFeature.WRITE_NULL_MAP_VALUES, false)
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+    public static final ObjectMapper PUBLIC_SMILE_MAPPER = buildMapper(new SmileFactory());
+
+    public static final ObjectWriter PUBLIC_SMILE_WRITER = buildWriter(PUBLIC_SMILE_MAPPER, PublicView.class);
+
+    public static ObjectMapper buildMapper() { return buildMapper(null); }
+
+    public static ObjectMapper buildMapper(JsonFactory factory) {
+        return new ObjectMapper(factory)
                 .configure(MapperFeature.DEFAULT_VIEW_INCLUSION, false)
                 .configure(SerializationFeature.INDENT_OUTPUT, true)
                 .configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false)
@@ -73,8 +97,78 @@ public class JsonUtil {
 
     public static class PublicView {}
 
+    // for toJson(o, jsonView) and friends: fields without a @JsonView are excluded from view-filtered output.
+    // a copy, so NOTNULL_MAPPER itself keeps its configuration
+    private static final ObjectMapper NOTNULL_VIEW_MAPPER = NOTNULL_MAPPER.copy()
+            .configure(MapperFeature.DEFAULT_VIEW_INCLUSION, false);
+
+    // Prebuilt readers and writers, by mapper, type and view. An ObjectReader/ObjectWriter captures the mapper's
+    // configuration when it is created. Only the mappers defined here are cached, so mappers that callers
+    // build themselves are never held on to.
+    public static final int MAX_CACHED_READERS_AND_WRITERS = 5000;
+    private static final Cache<IoKey, ObjectReader> readers = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_READERS_AND_WRITERS).build();
+    private static final Cache<IoKey, ObjectWriter> writers = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_READERS_AND_WRITERS).build();
+
+    private static final Set<ObjectMapper> CACHED_MAPPERS = Collections.newSetFromMap(new IdentityHashMap<ObjectMapper, Boolean>());
+    static {
+        CACHED_MAPPERS.addAll(Arrays.asList(FULL_MAPPER, FULL_MAPPER_ALLOW_COMMENTS, FULL_MAPPER_ALLOW_COMMENTS_AND_UNKNOWN_FIELDS,
+                NOTNULL_MAPPER, PUBLIC_MAPPER, NOTNULL_VIEW_MAPPER, FULL_SMILE_MAPPER, NOTNULL_SMILE_MAPPER, PUBLIC_SMILE_MAPPER));
+    }
+
+    @AllArgsConstructor @EqualsAndHashCode
+    private static final class IoKey {
+        private final ObjectMapper mapper;
+        private final Object type;
+        private final Class<?> view;
+    }
+
+    public static ObjectReader reader(ObjectMapper mapper, Class<?> type) { return cachedReader(mapper, type, null); }
+    public static ObjectReader reader(ObjectMapper mapper, Class<?> type, Class<?> view) { return cachedReader(mapper, type, view); }
+    public static ObjectReader reader(ObjectMapper mapper, JavaType type, Class<?> view) { return cachedReader(mapper, type, view); }
+
+    private static ObjectReader cachedReader(ObjectMapper mapper, Object type, Class<?> view) {
+        final boolean cached = CACHED_MAPPERS.contains(mapper);
+        final IoKey key = cached ? new IoKey(mapper, type, view) : null;
+        ObjectReader r = cached ? readers.getIfPresent(key) : null;
+        if (r == null) {
+            r = type instanceof JavaType ? mapper.readerFor((JavaType) type) : mapper.readerFor((Class<?>) type);
+            if (view != null) r = r.withView(view);
+            if (cached) readers.put(key, r);
+        }
+        return r;
+    }
+
+    public static ObjectWriter writer(ObjectMapper mapper, Object thing) { return writer(mapper, thing == null ? null : thing.getClass(), null); }
+
+    public static ObjectWriter writer(ObjectMapper mapper, Class<?> type, Class<?> view) {
+        final boolean cached = CACHED_MAPPERS.contains(mapper);
+        final IoKey key = cached ? new IoKey(mapper, type, view) : null;
+        ObjectWriter w = cached ? writers.getIfPresent(key) : null;
+        if (w == null) {
+            w = view == null ? mapper.writer() : mapper.writerWithView(view);
+            if (type != null) w = w.forType(type);
+            w = w.without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            if (cached) writers.put(key, w);
+        }
+        return w;
+    }
+
     public static String toJson (Object o) throws Exception {
-        return JsonUtil.NOTNULL_MAPPER.writeValueAsString(o);
+        return writer(NOTNULL_MAPPER, o).writeValueAsString(o);
+    }
+
+    public static byte[] toJsonBytes (Object o) throws Exception {
+        return writer(NOTNULL_MAPPER, o).writeValueAsBytes(o);
+    }
+
+    /**
+     * Write an object as UTF-8 JSON. The stream is not closed.
+     * @param o the object to write
+     * @param out where to write it
+     * @throws Exception if something goes wrong
+     */
+    public static void writeJson (Object o, OutputStream out) throws Exception {
+        writer(NOTNULL_MAPPER, o).writeValue(out, o);
     }
 
     public static String json (Object o) { return toJsonOrDie(o); }
@@ -91,20 +185,22 @@ public class JsonUtil {
         }
     }
 
+    protected static ObjectWriter viewWriter(Class jsonView) { return viewWriter(null, jsonView); }
 
-    private static Map<String, ObjectWriter> viewWriters = new ConcurrentHashMap<>();
-
-    protected static ObjectWriter viewWriter(Class jsonView) {
-        ObjectWriter w = viewWriters.get(jsonView.getName());
-        if (w == null) {
-            w = JsonUtil.NOTNULL_MAPPER.disable(MapperFeature.DEFAULT_VIEW_INCLUSION).writerWithView(jsonView);
-            viewWriters.put(jsonView.getName(), w);
-        }
-        return w;
+    protected static ObjectWriter viewWriter(Object o, Class jsonView) {
+        return writer(NOTNULL_VIEW_MAPPER, o == null ? null : o.getClass(), jsonView);
     }
 
     public static String toJson (Object o, Class jsonView) throws Exception {
-        return viewWriter(jsonView).writeValueAsString(o);
+        return viewWriter(o, jsonView).writeValueAsString(o);
+    }
+
+    public static byte[] toJsonBytes (Object o, Class jsonView) throws Exception {
+        return viewWriter(o, jsonView).writeValueAsBytes(o);
+    }
+
+    public static void writeJson (Object o, OutputStream out, Class jsonView) throws Exception {
+        viewWriter(o, jsonView).writeValue(out, o);
     }
 
     public static String toJsonOrDie (Object o, Class jsonView) {
@@ -119,20 +215,119 @@ public class JsonUtil {
         }
     }
 
+    public static byte[] toSmile (Object o) throws Exception {
+        return writer(NOTNULL_SMILE_MAPPER, o).writeValueAsBytes(o);
+    }
+
+    public static byte[] toSmile (Object o, Class jsonView) throws Exception {
+        return writer(NOTNULL_SMILE_MAPPER, o == null ? null : o.getClass(), jsonView).writeValueAsBytes(o);
+    }
+
+    public static byte[] toSmile (Object o, ObjectWriter writer) throws Exception {
+        return writer.writeValueAsBytes(o);
+    }
+
+    /**
+     * Write an object as Smile (binary JSON). The stream is not closed.
+     * @param o the object to write
+     * @param out where to write it
+     * @throws Exception if something goes wrong
+     */
+    public static void writeSmile (Object o, OutputStream out) throws Exception {
+        writer(NOTNULL_SMILE_MAPPER, o).writeValue(out, o);
+    }
+
+    public static void writeSmile (Object o, OutputStream out, Class jsonView) throws Exception {
+        writer(NOTNULL_SMILE_MAPPER, o == null ? null : o.getClass(), jsonView).writeValue(out, o);
+    }
+
+    public static byte[] toSmileOrDie (Object o) {
+        try { return toSmile(o); } catch (Exception e) {
+            return die("toSmile: exception writing object ("+o+"): "+e, e);
+        }
+    }
+
+    public static <T> T fromSmile(byte[] smile, Class<T> clazz) throws Exception {
+        return fromJson(smile, clazz, FULL_SMILE_MAPPER);
+    }
+
+    public static <T> T fromSmile(byte[] smile, Class<T> clazz, Class jsonView) throws Exception {
+        return reader(FULL_SMILE_MAPPER, clazz, jsonView).readValue(smile);
+    }
+
+    public static <T> T fromSmile(ByteBuffer smile, Class<T> clazz) throws Exception {
+        return fromJson(smile, clazz, FULL_SMILE_MAPPER);
+    }
+
+    public static <T> T fromSmile(InputStream smile, Class<T> clazz) throws Exception {
+        return fromJson(smile, clazz, FULL_SMILE_MAPPER);
+    }
+
+    public static <T> T fromSmile(File smile, Class<T> clazz) throws Exception {
+        return fromJson(smile, clazz, FULL_SMILE_MAPPER);
+    }
+
+    public static <T> T fromSmileOrDie(byte[] smile, Class<T> clazz) {
+        try { return fromSmile(smile, clazz); } catch (Exception e) {
+            return die("fromSmile: exception while reading "+smile.length+" bytes: "+e, e);
+        }
+    }
+
+    public static boolean isSmile(byte[] data) {
+        return data != null && data.length >= 3
+                && data[0] == SmileConstants.HEADER_BYTE_1
+                && data[1] == SmileConstants.HEADER_BYTE_2
+                && data[2] == SmileConstants.HEADER_BYTE_3;
+    }
+
+    public static String smileToJson(byte[] smile) throws Exception {
+        return toJson(FULL_SMILE_MAPPER.readValue(smile, Object.class));
+    }
+
+    public static byte[] jsonToSmile(String json) throws Exception {
+        return toSmile(FULL_MAPPER.readValue(json, Object.class));
+    }
+
     public static <T> T fromJson(InputStream json, Class<T> clazz) throws Exception {
-        return fromJson(StreamUtil.toString(json), clazz);
+        return fromJson(json, clazz, FULL_MAPPER);
     }
 
     public static <T> T fromJson(InputStream json, Class<T> clazz, ObjectMapper mapper) throws Exception {
-        return fromJson(StreamUtil.toString(json), clazz, mapper);
+        return reader(mapper, clazz).readValue(json);
     }
 
     public static <T> T fromJson(File json, Class<T> clazz) throws Exception {
-        return fromJson(FileUtil.toString(json), clazz);
+        return fromJson(json, clazz, FULL_MAPPER);
     }
 
     public static <T> T fromJson(File json, Class<T> clazz, ObjectMapper mapper) throws Exception {
-        return fromJson(FileUtil.toString(json), clazz, mapper);
+        return reader(mapper, clazz).readValue(json);
+    }
+
+    public static <T> T fromJson(byte[] json, Class<T> clazz) throws Exception {
+        return fromJson(json, clazz, FULL_MAPPER);
+    }
+
+    public static <T> T fromJson(byte[] json, Class<T> clazz, ObjectMapper mapper) throws Exception {
+        return reader(mapper, clazz).readValue(json);
+    }
+
+    /**
+     * Read JSON from the remaining bytes of a buffer. The buffer's position is not changed.
+     * @param json the UTF-8 encoded JSON
+     * @param clazz the type to read
+     * @param <T> the type to read
+     * @return an instance of clazz
+     * @throws Exception if something goes wrong
+     */
+    public static <T> T fromJson(ByteBuffer json, Class<T> clazz) throws Exception {
+        return fromJson(json, clazz, FULL_MAPPER);
+    }
+
+    public static <T> T fromJson(ByteBuffer json, Class<T> clazz, ObjectMapper mapper) throws Exception {
+        final ObjectReader reader = reader(mapper, clazz);
+        if (json.hasArray()) return reader.readValue(json.array(), json.arrayOffset() + json.position(), json.remaining());
+        return reader.readValue(new ByteBufferBackedInputStream(json.duplicate()));
     }
 
     public static <T> T fromJson(String json, Class<T> clazz) throws Exception {
@@ -140,11 +335,11 @@ public class JsonUtil {
     }
 
     public static <T> T fromJson(String json, JavaType type) throws Exception {
-        return JsonUtil.FULL_MAPPER.readValue(json, type);
+        return reader(FULL_MAPPER, type, null).readValue(json);
     }
 
     public static <T> T fromJson(String json, Class<T> clazz, ObjectMapper mapper) throws Exception {
-        return mapper.readValue(json, clazz);
+        return reader(mapper, clazz).readValue(json);
     }
 
     public static <T> T fromJsonOrDie(File json, Class<T> clazz) {
@@ -171,18 +366,41 @@ public class JsonUtil {
     public static <T> T fromJsonOrDie(String json, Class<T> clazz, ObjectMapper mapper) {
         if (empty(json)) return null;
         try {
-            return mapper.readValue(json, clazz);
+            return reader(mapper, clazz).readValue(json);
         } catch (IOException e) {
             return die("fromJsonOrDie: exception while reading: "+json+": "+e, e);
         }
     }
 
     public static <T> T fromJson(String json, String path, Class<T> clazz) throws Exception {
-        return fromJson(FULL_MAPPER.readTree(json), path, clazz);
+        return fromJson(FULL_MAPPER.getFactory().createParser(json), path, clazz);
     }
 
     public static <T> T fromJson(File json, String path, Class<T> clazz) throws Exception {
-        return fromJson(FULL_MAPPER.readTree(json), path, clazz);
+        return fromJson(FULL_MAPPER.getFactory().createParser(json), path, clazz);
+    }
+
+    public static <T> T fromJson(InputStream json, String path, Class<T> clazz) throws Exception {
+        return fromJson(FULL_MAPPER.getFactory().createParser(json), path, clazz);
+    }
+
+    /**
+     * Read only the value at path, binding it directly to clazz. Everything else in the document is skipped
+     * as it is parsed, so memory use depends on the size of the value, not the size of the document.
+     * @param parser the parser to read from. it will be closed when this method returns
+     * @param path the path to the value
+     * @param clazz the type to bind the value to
+     * @param <T> the type to bind the value to
+     * @return the value found at path, or null if the path was not found
+     * @throws Exception if something goes wrong
+     */
+    public static <T> T fromJson(JsonParser parser, String path, Class<T> clazz) throws Exception {
+        try {
+            if (!JsonPath.compile(path).seek(parser)) return null;
+            return reader(FULL_MAPPER, clazz).readValue(parser);
+        } finally {
+            parser.close();
+        }
     }
 
     public static <T> T fromJson(JsonNode child, Class<? extends T> childClass) throws Exception {
@@ -214,11 +432,21 @@ public class JsonUtil {
     }
 
     public static JsonNode findNode(JsonNode node, String path) throws IOException {
-        if (node == null) return null;
-        final List<JsonNode> nodePath = findNodePath(node, path);
-        if (nodePath == null || nodePath.isEmpty()) return null;
-        final JsonNode lastNode = nodePath.get(nodePath.size()-1);
-        return lastNode == MISSING ? null : lastNode;
+        return findNode(node, JsonPath.compile(path));
+    }
+
+    public static JsonNode findNode(JsonNode node, JsonPath path) {
+        for (int i=0; i<path.size(); i++) {
+            if (node == null) return null;
+            node = node.get(path.getName(i));
+            if (node == null) return null;
+            if (path.getIndex(i) != -1) {
+                node = node.get(path.getIndex(i));
+            } else if (path.isAppend(i)) {
+                return null;
+            }
+        }
+        return node == MISSING ? null : node;
     }
 
     public static String toString(Object node) throws JsonProcessingException {
@@ -230,37 +458,27 @@ public class JsonUtil {
     }
 
     public static List<JsonNode> findNodePath(JsonNode node, String path) throws IOException {
+        return findNodePath(node, JsonPath.compile(path));
+    }
+
+    public static List<JsonNode> findNodePath(JsonNode node, JsonPath path) {
 
-        final List<JsonNode> nodePath = new ArrayList<>();
+        final List<JsonNode> nodePath = new ArrayList<>(path.size()+1);
         nodePath.add(node);
-        if (empty(path)) return nodePath;
-        final List<String> pathParts = tokenize(path);
-
-        for (String pathPart : pathParts) {
-            int index = -1;
-            int bracketPos = pathPart.indexOf("[");
-            int bracketClosePos = pathPart.indexOf("]");
-            boolean isEmptyBrackets = false;
-            if (bracketPos != -1 && bracketClosePos != -1 && bracketClosePos > bracketPos) {
-                if (bracketClosePos == bracketPos+1) {
-                    // ends with [], they mean to append
-                    isEmptyBrackets = true;
-                } else {
-                    index = Integer.parseInt(pathPart.substring(bracketPos + 1, bracketClosePos));
-                }
-                pathPart = pathPart.substring(0, bracketPos);
-            }
-            node = node.get(pathPart);
+
+        for (int i=0; i<path.size(); i++) {
+            node = node.get(path.getName(i));
             if (node == null) {
                 nodePath.add(MISSING);
                 return nodePath;
             }
             nodePath.add(node);
-            if (index != -1) {
-                node = node.get(index);
+            if (path.getIndex(i) != -1) {
+                node = node.get(path.getIndex(i));
                 nodePath.add(node);
 
-            } else if (isEmptyBrackets) {
+            } else if (path.isAppend(i)) {
+                // ends with [], they mean to append
                 nodePath.add(MISSING);
                 return nodePath;
             }
@@ -268,31 +486,7 @@ public class JsonUtil {
         return nodePath;
     }
 
-    public static List<String> tokenize(String path) {
-        final List<String> pathParts = new ArrayList<>();
-        final StringTokenizer st = new StringTokenizer(path, ".'", true);
-        boolean collectingQuotedToken = false;
-        StringBuffer pathToken = new StringBuffer();
-        while (st.hasMoreTokens()) {
-            final String token = st.nextToken();
-            if (token.equals("'")) {
-                collectingQuotedToken = !collectingQuotedToken;
-
-            } else if (collectingQuotedToken) {
-                pathToken.append(token);
-
-            } else if (token.equals(".") && pathToken.length() > 0) {
-                pathParts.add(pathToken.toString());
-                pathToken = new StringBuffer();
-
-            } else {
-                pathToken.append(token);
-            }
-        }
-        if (collectingQuotedToken) throw new IllegalArgumentException("Unterminated single quote in: "+path);
-        if (pathToken.length() > 0) pathParts.add(pathToken.toString());
-        return pathParts;
-    }
+    public static List<String> tokenize(String path) { return JsonPath.compile(path).getTokens(); }
 
     public static ObjectNode replaceNode(File file, String path, String replacement) throws Exception {
         return replaceNode((ObjectNode) FULL_MAPPER.readTree(file), path, replacement);
@@ -304,12 +498,11 @@ public class JsonUtil {
 
     public static ObjectNode replaceNode(ObjectNode document, String path, String replacement) throws Exception {
 
-        final String simplePath = path.contains(".") ? path.substring(path.lastIndexOf(".")+1) : path;
-        Integer index = null;
-        if (simplePath.contains("[")) {
-            index = Integer.parseInt(simplePath.substring(simplePath.indexOf("[")+1, simplePath.indexOf("]")));
-        }
-        final List<JsonNode> found = findNodePath(document, path);
+        final JsonPath jsonPath = JsonPath.compile(path);
+        if (jsonPath.isEmpty()) throw new IllegalArgumentException("path not found: "+path);
+        final String simplePath = jsonPath.getName(jsonPath.size()-1);
+        final Integer index = jsonPath.getLastIndex();
+        final List<JsonNode> found = findNodePath(document, jsonPath);
         if (found == null || found.isEmpty() || found.get(found.size()-1).equals(MISSING)) {
             throw new IllegalArgumentException("path not found: "+path);
         }
@@ -355,26 +548,21 @@ public class JsonUtil {
 
     // adapted from: https://stackoverflow.com/a/11459962/1251543
     public static JsonNode mergeNodes(JsonNode mainNode, JsonNode updateNode) {
-
-        final Iterator<String> fieldNames = updateNode.fieldNames();
-        while (fieldNames.hasNext()) {
-            final String fieldName = fieldNames.next();
-            final JsonNode jsonNode = mainNode.get(fieldName);
-            // if field exists and is an embedded object
-            if (jsonNode != null && jsonNode.isObject()) {
-                mergeNodes(jsonNode, updateNode.get(fieldName));
-            } else {
-                if (mainNode instanceof ObjectNode) {
-                    // Overwrite field
-                    final JsonNode value = updateNode.get(fieldName);
-                    ((ObjectNode) mainNode).set(fieldName, value);
-                }
-            }
-        }
-
+        if (mainNode instanceof ObjectNode) new JsonMerge().setTrackChanges(false).merge((ObjectNode) mainNode, updateNode);
         return mainNode;
     }
 
+    /**
+     * Merge updateNode into mainNode, merging arrays of objects by idField. See JsonMerge.
+     * @param mainNode the node to merge into. it is modified.
+     * @param updateNode the values to merge
+     * @param idField the field that identifies array elements, or null to replace arrays
+     * @return the paths that were added or replaced
+     */
+    public static List<String> mergeNodes(ObjectNode mainNode, JsonNode updateNode, String idField) {
+        return new JsonMerge(idField).merge(mainNode, updateNode);
+    }
+
     public static String mergeJsonOrDie(String json, String request) {
         try {
             return mergeJson(json, request);
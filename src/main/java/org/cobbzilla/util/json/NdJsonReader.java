@@ -0,0 +1,207 @@
+package org.cobbzilla.util.json;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import static org.cobbzilla.util.daemon.ZillaRuntime.die;
+import static org.cobbzilla.util.daemon.ZillaRuntime.notSupported;
+import static org.cobbzilla.util.json.JsonUtil.FULL_MAPPER;
+import static org.cobbzilla.util.string.StringUtil.UTF8cs;
+
+/**
+ * Reads newline-delimited JSON (NDJSON / JSON lines): one JSON value per line, each returned as an instance of T.
+ *
+ * By default values are decoded on the calling thread, one at a time, from a single parser.
+ * After calling parallel(), lines are read in batches and each batch is decoded across a ForkJoinPool.
+ * Values are always returned in input order.
+ *
+ * A reader can only be iterated once. Closing it closes the underlying stream.
+ *
+ * @param <T> the type of each value
+ */
+public class NdJsonReader<T> implements Iterator<T>, Iterable<T>, Closeable {
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    // below this many lines, a decode task does not split any further
+    private static final int DECODE_THRESHOLD = 64;
+
+    private static final ForkJoinPool DEFAULT_POOL = new ForkJoinPool();
+
+    private final InputStream in;
+    private final ObjectReader reader;
+
+    // serial mode
+    private MappingIterator<T> values;
+
+    // parallel mode
+    private ForkJoinPool pool;
+    private int batchSize;
+    private BufferedReader lines;
+    private final Deque<Batch> pending = new ArrayDeque<>();
+    private Batch current;
+    private long lineNumber = 0;
+    private boolean eof = false;
+
+    public NdJsonReader(InputStream in, Class<T> clazz) { this(in, clazz, FULL_MAPPER); }
+
+    public NdJsonReader(InputStream in, Class<T> clazz, ObjectMapper mapper) {
+        this.in = in;
+        this.reader = JsonUtil.reader(mapper, clazz);
+    }
+
+    public NdJsonReader(File file, Class<T> clazz) throws FileNotFoundException { this(new FileInputStream(file), clazz); }
+
+    public NdJsonReader(File file, Class<T> clazz, ObjectMapper mapper) throws FileNotFoundException {
+        this(new FileInputStream(file), clazz, mapper);
+    }
+
+    public NdJsonReader<T> parallel() { return parallel(DEFAULT_POOL, DEFAULT_BATCH_SIZE); }
+
+    /**
+     * Decode lines in parallel. Must be called before reading any values.
+     * @param pool the pool that will decode lines
+     * @param batchSize how many lines to read at a time. Each batch is split up across the pool.
+     * @return this reader
+     */
+    public NdJsonReader<T> parallel(ForkJoinPool pool, int batchSize) {
+        if (values != null || lines != null) die("parallel: already reading");
+        if (batchSize <= 0) die("parallel: invalid batchSize: "+batchSize);
+        this.pool = pool;
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public boolean isParallel() { return pool != null; }
+
+    @Override public Iterator<T> iterator() { return this; }
+
+    @Override public boolean hasNext() {
+        if (!isParallel()) {
+            if (values == null) {
+                try {
+                    values = reader.readValues(in);
+                } catch (IOException e) {
+                    return die("hasNext: error reading: "+e, e);
+                }
+            }
+            return values.hasNext();
+        }
+        while (current == null || !current.hasNext()) {
+            fill();
+            if (pending.isEmpty()) return false;
+            current = pending.poll();
+            current.task.join();
+        }
+        return true;
+    }
+
+    @Override public T next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        return isParallel() ? current.next() : values.next();
+    }
+
+    @Override public void remove() { notSupported("remove"); }
+
+    public List<T> toList() {
+        final List<T> list = new ArrayList<>();
+        while (hasNext()) list.add(next());
+        return list;
+    }
+
+    // keep a few batches decoding ahead of the one being returned
+    private void fill() {
+        if (lines == null) lines = new BufferedReader(new InputStreamReader(in, UTF8cs));
+        final int maxPending = 2 * pool.getParallelism();
+        while (!eof && pending.size() < maxPending) {
+            final List<String> batch = new ArrayList<>(batchSize);
+            final long firstLine = lineNumber + 1;
+            try {
+                String line;
+                while (batch.size() < batchSize && (line = lines.readLine()) != null) {
+                    lineNumber++;
+                    if (line.trim().length() > 0) batch.add(line);
+                }
+            } catch (IOException e) {
+                die("fill: error reading line "+lineNumber+": "+e, e);
+            }
+            if (batch.size() < batchSize) eof = true;
+            if (batch.isEmpty()) break;
+
+            final String[] batchLines = batch.toArray(new String[batch.size()]);
+            final Object[] decoded = new Object[batchLines.length];
+            pending.add(new Batch(decoded, pool.submit(new Decode(batchLines, decoded, 0, batchLines.length, firstLine))));
+        }
+    }
+
+    private class Batch {
+        private final Object[] decoded;
+        private final ForkJoinTask<?> task;
+        private int pos = 0;
+
+        Batch(Object[] decoded, ForkJoinTask<?> task) {
+            this.decoded = decoded;
+            this.task = task;
+        }
+
+        boolean hasNext() { return pos < decoded.length; }
+
+        T next() {
+            final T value = (T) decoded[pos];
+            decoded[pos++] = null;
+            return value;
+        }
+    }
+
+    private class Decode extends RecursiveAction {
+        private final String[] lines;
+        private final Object[] decoded;
+        private final int from;
+        private final int to;
+        private final long firstLine;
+
+        Decode(String[] lines, Object[] decoded, int from, int to, long firstLine) {
+            this.lines = lines;
+            this.decoded = decoded;
+            this.from = from;
+            this.to = to;
+            this.firstLine = firstLine;
+        }
+
+        @Override protected void compute() {
+            if (to - from <= DECODE_THRESHOLD) {
+                for (int i=from; i<to; i++) {
+                    try {
+                        decoded[i] = reader.readValue(lines[i]);
+                    } catch (IOException e) {
+                        die("decode: error reading value in batch starting at line "+firstLine+": "+e, e);
+                    }
+                }
+            } else {
+                final int mid = (from + to) >>> 1;
+                invokeAll(new Decode(lines, decoded, from, mid, firstLine), new Decode(lines, decoded, mid, to, firstLine));
+            }
+        }
+    }
+
+    @Override public void close() throws IOException {
+        pending.clear();
+        current = null;
+        if (values != null) values.close();
+        if (lines != null) lines.close();
+        in.close();
+    }
+
+}
@@ -0,0 +1,57 @@
+package org.cobbzilla.util.json;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.Getter;
+
+import java.io.*;
+
+import static org.cobbzilla.util.json.JsonUtil.NOTNULL_MAPPER;
+
+/**
+ * Writes newline-delimited JSON (NDJSON / JSON lines): each object is written as one line of JSON.
+ * All records go through a single generator, so writing a record does not allocate a String or a new generator.
+ *
+ * Output is buffered; call flush() to push records to the underlying stream. Closing the writer closes the stream.
+ */
+public class NdJsonWriter implements Closeable, Flushable {
+
+    private final JsonGenerator generator;
+    private final ObjectWriter writer;
+
+    @Getter private long count = 0;
+
+    public NdJsonWriter(OutputStream out) throws IOException { this(out, NOTNULL_MAPPER, null); }
+
+    public NdJsonWriter(OutputStream out, ObjectMapper mapper) throws IOException { this(out, mapper, null); }
+
+    public NdJsonWriter(OutputStream out, ObjectMapper mapper, Class<?> view) throws IOException {
+        writer = (view == null ? mapper.writer() : mapper.writerWithView(view))
+                .without(SerializationFeature.INDENT_OUTPUT)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        generator = mapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+        generator.setRootValueSeparator(null);
+    }
+
+    public NdJsonWriter(File file, boolean append) throws IOException { this(new FileOutputStream(file, append)); }
+
+    public NdJsonWriter write(Object thing) throws IOException {
+        writer.writeValue(generator, thing);
+        generator.writeRaw('\n');
+        count++;
+        return this;
+    }
+
+    public NdJsonWriter writeAll(Iterable<?> things) throws IOException {
+        for (Object thing : things) write(thing);
+        return this;
+    }
+
+    @Override public void flush() throws IOException { generator.flush(); }
+
+    @Override public void close() throws IOException { generator.close(); }
+
+}
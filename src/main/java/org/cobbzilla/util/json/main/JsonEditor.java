@@ -1,8 +1,10 @@
 package org.cobbzilla.util.json.main;
 
+import lombok.AllArgsConstructor;
 import lombok.Cleanup;
 import lombok.Getter;
 import lombok.Setter;
+import org.apache.commons.io.FileUtils;
 import org.cobbzilla.util.daemon.ZillaRuntime;
 import org.cobbzilla.util.io.FileUtil;
 import org.cobbzilla.util.json.JsonEdit;
@@ -10,12 +12,17 @@ import org.cobbzilla.util.json.JsonEditOperation;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.InputStream;
+import java.io.*;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
 
 import static org.cobbzilla.util.daemon.ZillaRuntime.*;
 import static org.cobbzilla.util.daemon.ZillaRuntime.empty;
+import static org.cobbzilla.util.io.FileUtil.abs;
 
 public class JsonEditor {
 
@@ -40,29 +47,133 @@ public class JsonEditor {
     }
 
     public void run() throws Exception {
+        if (options.hasFiles()) System.exit(runBatch() ? 0 : 1);
+        System.exit(runSingle());
+    }
+
+    /**
+     * Edit the single document from options.jsonFile or stdin, writing to options.outfile or stdout.
+     * With streaming or smile enabled, and no read operation, the edited document is written as it is produced,
+     * and never held in memory as a whole.
+     * @return the exit status: 0 for success, 1 if a read operation found nothing
+     * @throws Exception if the edit fails
+     */
+    public int runSingle() throws Exception {
         @Cleanup InputStream in = getInputStream();
-        JsonEdit edit = new JsonEdit()
-                .setJsonData(in)
-                .addOperation(new JsonEditOperation()
-                        .setType(options.getOperationType())
-                        .setPath(options.getPath())
-                        .setJson(options.getValue()));
+        final JsonEdit edit = newEdit(in, options.getOperations());
+
+        if ((edit.isStreaming() || edit.isSmile()) && !edit.hasReadOperation()) {
+            if (options.hasOutfile()) {
+                @Cleanup final OutputStream out = new BufferedOutputStream(new FileOutputStream(options.getOutfile()));
+                edit.edit(out);
+            } else {
+                edit.edit(System.out);
+                System.out.flush();
+            }
+            return 0;
+        }
 
         final String json = edit.edit();
 
         if (options.hasOutfile()) {
             FileUtil.toFile(options.getOutfile(), json);
         } else {
-            if (empty(json)) {
-                System.exit(1);
-            } else {
-                System.out.print(json);
-            }
+            if (empty(json)) return 1;
+            System.out.print(json);
         }
-        System.exit(0);
+        return 0;
     }
 
     private InputStream getInputStream() throws FileNotFoundException {
         return options.hasJsonFile() ? new FileInputStream(options.getJsonFile()) : System.in;
     }
+
+    private JsonEdit newEdit(Object jsonData, List<JsonEditOperation> operations) {
+        return new JsonEdit()
+                .setJsonData(jsonData)
+                .setStreaming(options.isStreaming())
+                .setSmile(options.isSmile())
+                .setOperations(new ArrayList<>(operations));
+    }
+
+    /**
+     * Edit every file named by options.files, several at a time. Changed files (or, for a read, each file and
+     * the value read) are printed to stdout, errors and a summary to stderr.
+     * @return true if every file was edited successfully
+     * @throws Exception if the files or operations cannot be determined
+     */
+    public boolean runBatch() throws Exception {
+        final List<JsonEditOperation> operations = options.getOperations();
+        final Set<File> files = new LinkedHashSet<>();
+        for (String pattern : options.getFiles()) files.addAll(FileUtil.glob(pattern));
+        if (files.isEmpty()) {
+            System.err.println("No files matched: "+options.getFiles());
+            return false;
+        }
+
+        final ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(options.getThreads(), files.size())));
+        final List<Future<FileResult>> results = new ArrayList<>(files.size());
+        try {
+            for (final File file : files) {
+                results.add(pool.submit(new Callable<FileResult>() {
+                    @Override public FileResult call() throws Exception { return editFile(file, operations); }
+                }));
+            }
+
+            int changed = 0, failed = 0;
+            int i = 0;
+            for (File file : files) {
+                final FileResult result;
+                try {
+                    result = results.get(i++).get();
+                } catch (ExecutionException e) {
+                    failed++;
+                    System.err.println(abs(file)+": "+e.getCause());
+                    continue;
+                }
+                if (result.read) {
+                    System.out.println(abs(file)+": "+result.value);
+                } else if (result.changed) {
+                    changed++;
+                    System.out.println(abs(file));
+                }
+            }
+            System.err.println(files.size()+" files, "+changed+" changed, "+failed+" failed");
+            return failed == 0;
+
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @AllArgsConstructor
+    private static class FileResult {
+        public final boolean read;
+        public final boolean changed;
+        public final String value;
+    }
+
+    // write the edited file next to the original and rename it into place, so readers never see a partial file
+    private FileResult editFile(File file, List<JsonEditOperation> operations) throws Exception {
+        final JsonEdit edit = newEdit(file, operations);
+        if (edit.hasReadOperation()) return new FileResult(true, false, edit.edit());
+
+        final File temp = File.createTempFile("."+file.getName()+".", ".tmp", file.getAbsoluteFile().getParentFile());
+        try {
+            try (OutputStream out = new FileOutputStream(temp)) {
+                edit.edit(out);
+            }
+            if (FileUtils.contentEquals(file, temp)) return new FileResult(false, false, null);
+            try {
+                Files.setPosixFilePermissions(temp.toPath(), Files.getPosixFilePermissions(file.toPath()));
+            } catch (UnsupportedOperationException ignored) {
+                // not a POSIX filesystem
+            }
+            FileUtil.renameOrDie(temp, file);
+            return new FileResult(false, true, null);
+
+        } finally {
+            if (temp.exists()) temp.delete();
+        }
+    }
 }
\ No newline at end of file
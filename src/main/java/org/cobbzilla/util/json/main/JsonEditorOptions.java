@@ -1,11 +1,20 @@
 package org.cobbzilla.util.json.main;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import lombok.Getter;
 import lombok.Setter;
+import org.cobbzilla.util.json.JsonEditOperation;
 import org.cobbzilla.util.json.JsonEditOperationType;
+import org.cobbzilla.util.json.JsonUtil;
+import org.kohsuke.args4j.Argument;
 import org.kohsuke.args4j.Option;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.cobbzilla.util.daemon.ZillaRuntime.die;
+import static org.cobbzilla.util.daemon.ZillaRuntime.empty;
 
 public class JsonEditorOptions {
 
@@ -44,4 +53,65 @@ public class JsonEditorOptions {
 
     public boolean hasOutfile () { return outfile != null; }
 
+    public static final String USAGE_STREAMING = "Edit the JSON as it is read, without loading the whole document into memory. Useful for very large files.";
+    public static final String OPT_STREAMING = "-s";
+    public static final String LONGOPT_STREAMING = "--streaming";
+    @Option(name=OPT_STREAMING, aliases=LONGOPT_STREAMING, usage=USAGE_STREAMING)
+    @Getter @Setter private boolean streaming = false;
+
+    public static final String USAGE_SMILE = "Write the edited document as Smile (binary JSON). The input can always be either JSON or Smile.";
+    public static final String OPT_SMILE = "-b";
+    public static final String LONGOPT_SMILE = "--smile";
+    @Option(name=OPT_SMILE, aliases=LONGOPT_SMILE, usage=USAGE_SMILE)
+    @Getter @Setter private boolean smile = false;
+
+    public static final String USAGE_SCRIPT = "A JSON file with an array of operations to apply in order, like "
+            + "[{\"type\": \"write\", \"path\": \"a.b\", \"json\": {\"c\": 1}}, {\"type\": \"delete\", \"path\": \"x\"}]. "
+            + "A json value that is a string is parsed as JSON. Replaces -o, -p and -v.";
+    public static final String OPT_SCRIPT = "-e";
+    public static final String LONGOPT_SCRIPT = "--script";
+    @Option(name=OPT_SCRIPT, aliases=LONGOPT_SCRIPT, usage=USAGE_SCRIPT)
+    @Getter @Setter private File script;
+
+    public boolean hasScript () { return script != null; }
+
+    public static final String USAGE_THREADS = "How many files to edit at once, when editing multiple files. Default is the number of processors.";
+    public static final String OPT_THREADS = "-t";
+    public static final String LONGOPT_THREADS = "--threads";
+    @Option(name=OPT_THREADS, aliases=LONGOPT_THREADS, usage=USAGE_THREADS)
+    @Getter @Setter private int threads = Runtime.getRuntime().availableProcessors();
+
+    public static final String USAGE_FILES = "Files to edit in place, or glob patterns (like 'conf/**/*.json') that match them. "
+            + "Each file is replaced atomically, and only if its contents changed. The changed files are printed. "
+            + "If no files are given, the single document from "+OPT_CONFIG_FILE+" or standard input is edited.";
+    @Argument(usage=USAGE_FILES)
+    @Getter @Setter private List<String> files = new ArrayList<>();
+
+    public boolean hasFiles () { return !empty(files); }
+
+    public List<JsonEditOperation> getOperations () throws Exception {
+        final List<JsonEditOperation> operations = new ArrayList<>();
+        if (!hasScript()) {
+            operations.add(new JsonEditOperation()
+                    .setType(getOperationType())
+                    .setPath(getPath())
+                    .setJson(getValue()));
+            return operations;
+        }
+
+        final JsonNode script = JsonUtil.fromJson(getScript(), JsonNode.class);
+        if (script == null || !script.isArray()) die("getOperations: script is not a JSON array: "+getScript());
+        for (JsonNode op : script) {
+            final JsonNode type = op.get("type");
+            final JsonNode path = op.get("path");
+            final JsonNode json = op.get("json");
+            if (type == null || !type.isTextual()) die("getOperations: operation has no type: "+op);
+            operations.add(new JsonEditOperation()
+                    .setType(JsonEditOperationType.create(type.textValue()))
+                    .setPath(path == null || path.isNull() ? null : path.asText())
+                    .setJson(json == null || json.isNull() ? null : json.isTextual() ? json.textValue() : json.toString()));
+        }
+        return operations;
+    }
+
 }
@@ -0,0 +1,184 @@
+package org.cobbzilla.util.reflect;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import org.apache.commons.beanutils.MethodUtils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static org.cobbzilla.util.daemon.ZillaRuntime.die;
+
+/**
+ * The getters and setters of one class, looked up by property name the first time they are needed and then reused.
+ * Lookups that find nothing are remembered too, so asking again for a missing property is just as cheap.
+ *
+ * Methods are found the same way commons-beanutils MethodUtils.invokeMethod finds them, so results are the same
+ * as calling MethodUtils directly, without searching the class on every call.
+ */
+public class AccessorRegistry {
+
+    public static final int MAX_CACHED_PATHS = 2000;
+
+    // past this many entries, lookups that found nothing are no longer remembered (in case names come from data)
+    public static final int MAX_NEGATIVE_LOOKUPS = 1000;
+
+    private static final ClassValue<AccessorRegistry> registries = new ClassValue<AccessorRegistry>() {
+        @Override protected AccessorRegistry computeValue(Class<?> type) { return new AccessorRegistry(type); }
+    };
+
+    private static final Cache<String, String[]> paths = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_PATHS).build();
+
+    // stand-ins for "no such method" and "more than one method" in the maps below, which cannot hold null.
+    // getDeclaredMethod returns a new Method object every time, so these are distinct from each other and from any real result.
+    private static final Method NONE = sentinel();
+    private static final Method AMBIGUOUS = sentinel();
+
+    private static Method sentinel() {
+        try {
+            return AccessorRegistry.class.getDeclaredMethod("sentinel");
+        } catch (NoSuchMethodException e) {
+            return die("sentinel: "+e, e);
+        }
+    }
+
+    public static AccessorRegistry forClass(Class<?> type) { return registries.get(type); }
+
+    /**
+     * @param field a property name, or a dotted path of property names (like "address.city")
+     * @return the property names in the path
+     */
+    public static String[] path(String field) {
+        String[] tokens = paths.getIfPresent(field);
+        if (tokens == null) {
+            tokens = field.split("\\.");
+            paths.put(field, tokens);
+        }
+        return tokens;
+    }
+
+    @Getter private final Class<?> type;
+
+    private final ConcurrentMap<String, Method> getters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<SetterKey, Method> setters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<SetterKey, Method> exactSetters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Method> nullSetters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Method, PropertyAccessor> accessors = new ConcurrentHashMap<>();
+
+    @AllArgsConstructor @EqualsAndHashCode
+    private static final class SetterKey {
+        private final String property;
+        private final Class<?> type;
+    }
+
+    private final BeanCompanion<?> companion;
+
+    private AccessorRegistry(Class<?> type) {
+        this.type = type;
+        this.companion = BeanCompanion.forClass(type);
+    }
+
+    /**
+     * @param property the property name
+     * @return the getXXX method for the property, or the isXXX method if there is no getXXX. null if neither exists.
+     */
+    public Method getter(String property) {
+        Method m = getters.get(property);
+        if (m == null) {
+            m = MethodUtils.getMatchingAccessibleMethod(type, accessorName("get", property), new Class[0]);
+            if (m == null) m = MethodUtils.getMatchingAccessibleMethod(type, accessorName("is", property), new Class[0]);
+            remember(getters, property, m);
+        }
+        return m == NONE ? null : m;
+    }
+
+    /**
+     * @param property the property name
+     * @param valueType the type of the value that will be passed to the setter
+     * @return a setXXX method that accepts a valueType (including by widening or unboxing), or null if there is none
+     */
+    public Method setter(String property, Class<?> valueType) {
+        final SetterKey key = new SetterKey(property, valueType);
+        Method m = setters.get(key);
+        if (m == null) {
+            m = MethodUtils.getMatchingAccessibleMethod(type, accessorName("set", property), new Class[] { valueType });
+            remember(setters, key, m);
+        }
+        return m == NONE ? null : m;
+    }
+
+    /**
+     * @param property the property name
+     * @param paramType the exact parameter type
+     * @return the public setXXX method whose parameter type is exactly paramType, or null if there is none
+     */
+    public Method exactSetter(String property, Class<?> paramType) {
+        final SetterKey key = new SetterKey(property, paramType);
+        Method m = exactSetters.get(key);
+        if (m == null) {
+            try {
+                m = type.getMethod(accessorName("set", property), paramType);
+            } catch (NoSuchMethodException e) {
+                m = null;
+            }
+            remember(exactSetters, key, m);
+        }
+        return m == NONE ? null : m;
+    }
+
+    /**
+     * Find the setter to use when setting a property to null, when the type of the property is not known.
+     * @param property the property name
+     * @return the only public single-argument setXXX method
+     * @throws IllegalStateException if there is no such method, or more than one
+     */
+    public Method nullSetter(String property) {
+        Method m = nullSetters.get(property);
+        if (m == null) {
+            final String methodName = accessorName("set", property);
+            for (Method candidate : type.getMethods()) {
+                if (candidate.getName().equals(methodName) && candidate.getParameterTypes().length == 1) {
+                    m = m == null ? candidate : AMBIGUOUS;
+                }
+            }
+            remember(nullSetters, property, m);
+        }
+        if (m == AMBIGUOUS) die("nullSetter: value was null and multiple single-arg methods named " + accessorName("set", property) + " exist");
+        if (m == null || m == NONE) die("nullSetter: no method " + accessorName("set", property) + " found on " + type.getName());
+        return m;
+    }
+
+    /**
+     * @param method a getter or setter of this class
+     * @return a PropertyAccessor that calls the method, created once and reused. if the class has a BeanCompanion,
+     * the companion's accessor for the method is used
+     */
+    public PropertyAccessor accessor(Method method) {
+        PropertyAccessor accessor = accessors.get(method);
+        if (accessor == null) {
+            if (companion != null) accessor = companion.accessor(method.getName(), method.getParameterTypes());
+            if (accessor == null) accessor = PropertyAccessor.forMethod(method);
+            accessors.putIfAbsent(method, accessor);
+        }
+        return accessor;
+    }
+
+    private <K> void remember(ConcurrentMap<K, Method> map, K key, Method m) {
+        if (m != null) {
+            map.put(key, m);
+        } else if (map.size() < MAX_NEGATIVE_LOOKUPS) {
+            map.put(key, NONE);
+        }
+    }
+
+    public static String accessorName(String prefix, String property) {
+        return property.length() == 1
+                ? prefix + property.toUpperCase()
+                : prefix + property.substring(0, 1).toUpperCase() + property.substring(1);
+    }
+
+}
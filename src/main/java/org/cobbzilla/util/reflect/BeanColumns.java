@@ -0,0 +1,260 @@
+package org.cobbzilla.util.reflect;
+
+import java.lang.reflect.Method;
+import java.util.*;
+
+import static org.cobbzilla.util.daemon.ZillaRuntime.die;
+
+/**
+ * The properties of a list of beans, stored by column: one array of values per property name, with one element per bean.
+ * Built by ReflectionUtil.toColumns, which reads each bean the same way toMap does, but resolves the getters once per
+ * class for the whole list instead of building a HashMap per bean.
+ *
+ * Rows can be viewed as Maps that share the column index, see row and asMaps.
+ * Missing values are null, and are left out of the row views (toMap never includes nulls).
+ */
+public class BeanColumns {
+
+    private final Map<String, Integer> index = new LinkedHashMap<>();
+    private final List<Object[]> columns = new ArrayList<>();
+    private final int rows;
+
+    public BeanColumns (int rows) { this.rows = rows; }
+
+    /**
+     * @param things the beans to read. they do not need to share a class
+     * @param fields if not null, only these fields are read
+     * @param exclude if not null, these fields are not read
+     * @return the non-null values of each bean, by column
+     */
+    public static BeanColumns of (List<?> things, String[] fields, String[] exclude) {
+        final BeanColumns table = new BeanColumns(things.size());
+        final Map<Class<?>, CopyPlan> plans = new HashMap<>();
+        final Map<CopyPlan, Object[][]> planColumns = new IdentityHashMap<>();
+        int row = 0;
+        try {
+            for (Object thing : things) {
+                if (thing != null) {
+                    CopyPlan plan = plans.get(thing.getClass());
+                    if (plan == null) {
+                        plan = CopyPlan.forClasses(thing.getClass(), Map.class, fields, exclude);
+                        plans.put(thing.getClass(), plan);
+                    }
+                    Object[][] cols = planColumns.get(plan);
+                    if (cols == null) {
+                        cols = new Object[plan.size()][];
+                        for (int i=0; i<cols.length; i++) cols[i] = table.column(plan.fieldName(i));
+                        planColumns.put(plan, cols);
+                    }
+                    for (int i=0; i<cols.length; i++) {
+                        final Object value = plan.get(i, thing);
+                        if (value != null) cols[i][row] = value;
+                    }
+                }
+                row++;
+            }
+        } catch (Exception e) {
+            return die("toColumns: error reading row "+row+": "+e, e);
+        }
+        return table;
+    }
+
+    /**
+     * @param name a column name
+     * @return the column's values, one per row. created (all null) if there is no such column yet
+     */
+    public Object[] column (String name) {
+        final Integer i = index.get(name);
+        if (i != null) return columns.get(i);
+        final Object[] column = new Object[rows];
+        index.put(name, columns.size());
+        columns.add(column);
+        return column;
+    }
+
+    public int getRowCount () { return rows; }
+
+    public int getColumnCount () { return columns.size(); }
+
+    public Set<String> getNames () { return Collections.unmodifiableSet(index.keySet()); }
+
+    public boolean hasColumn (String name) { return index.containsKey(name); }
+
+    /**
+     * @param name a column name
+     * @return the column's values, or null if there is no such column. changes to the array change the table
+     */
+    public Object[] getColumn (String name) {
+        final Integer i = index.get(name);
+        return i == null ? null : columns.get(i);
+    }
+
+    public Object get (int row, String name) {
+        final Integer i = index.get(name);
+        return i == null ? null : columns.get(i)[row];
+    }
+
+    /**
+     * @param row the row number
+     * @return a Map view of the row. put changes the table, but only for existing columns
+     */
+    public Map<String, Object> row (int row) {
+        if (row < 0 || row >= rows) throw new IndexOutOfBoundsException("row "+row+" (rows="+rows+")");
+        return new RowView(row);
+    }
+
+    /** @return a view of every row, as a list of maps */
+    public List<Map<String, Object>> asMaps () {
+        return new AbstractList<Map<String, Object>>() {
+            @Override public Map<String, Object> get(int row) { return row(row); }
+            @Override public int size() { return rows; }
+        };
+    }
+
+    /**
+     * Populate beans from the columns, the same way ReflectionUtil.copyFromMap would from each row view.
+     * Setters are resolved once per column, and again only when the class of the bean or value changes.
+     * @param dests the beans to populate, one per row
+     * @return dests
+     */
+    public <T> List<T> copyTo (List<T> dests) {
+        if (dests.size() != rows) die("copyTo: "+dests.size()+" objects for "+rows+" rows");
+        final Object[] targets = dests.toArray();
+        for (Map.Entry<String, Integer> column : index.entrySet()) {
+            final ColumnSetter setter = new ColumnSetter(column.getKey());
+            final Object[] values = columns.get(column.getValue());
+            for (int row=0; row<rows; row++) setter.set(targets[row], values[row]);
+        }
+        return dests;
+    }
+
+    /**
+     * Populate beans from maps, the same way ReflectionUtil.copyFromMap would, resolving setters once per key
+     * for the whole list
+     * @param dests the beans to populate
+     * @param maps the values for each bean
+     * @return dests
+     */
+    public static <T> List<T> copyFromMaps (List<T> dests, List<? extends Map<String, Object>> maps) {
+        if (dests.size() != maps.size()) die("copyFromMaps: "+dests.size()+" objects for "+maps.size()+" maps");
+        final Map<String, ColumnSetter> setters = new HashMap<>();
+        for (int row=0; row<maps.size(); row++) {
+            final T dest = dests.get(row);
+            for (Map.Entry<String, Object> entry : maps.get(row).entrySet()) {
+                ColumnSetter setter = setters.get(entry.getKey());
+                if (setter == null) {
+                    setter = new ColumnSetter(entry.getKey());
+                    setters.put(entry.getKey(), setter);
+                }
+                setter.set(dest, entry.getValue());
+            }
+        }
+        return dests;
+    }
+
+    // sets one property on many beans, remembering the setter for the last bean class and value class seen.
+    // nested paths, Map values and Map destinations are handed to ReflectionUtil.copyFromMap's logic
+    private static class ColumnSetter {
+
+        private final String name;
+        private final boolean simple;
+        private Class<?> destClass;
+        private Class<?> valueClass;
+        private PropertyAccessor setter;
+
+        ColumnSetter (String name) {
+            this.name = name;
+            this.simple = name.indexOf('.') == -1;
+        }
+
+        void set (Object dest, Object value) {
+            // null means "no value" in a column
+            if (value == null) return;
+            if (!simple || value instanceof Map || dest instanceof Map) {
+                ReflectionUtil.copyFromMapEntry(dest, name, value);
+                return;
+            }
+            if (dest.getClass() != destClass || value.getClass() != valueClass) {
+                destClass = dest.getClass();
+                valueClass = value.getClass();
+                final AccessorRegistry accessors = AccessorRegistry.forClass(destClass);
+                final Method m = accessors.exactSetter(name, valueClass);
+                setter = m == null ? null : accessors.accessor(m);
+            }
+            if (setter == null) return;
+            try {
+                setter.set(dest, value);
+            } catch (Exception e) {
+                die("Error calling " + AccessorRegistry.accessorName("set", name) + ": " + e);
+            }
+        }
+    }
+
+    private class RowView extends AbstractMap<String, Object> {
+
+        private final int row;
+
+        RowView (int row) { this.row = row; }
+
+        @Override public Object get(Object key) {
+            final Integer i = index.get(key);
+            return i == null ? null : columns.get(i)[row];
+        }
+
+        @Override public boolean containsKey(Object key) { return get(key) != null; }
+
+        @Override public Object put(String key, Object value) {
+            final Integer i = index.get(key);
+            if (i == null) throw new UnsupportedOperationException("put: no column named "+key);
+            final Object old = columns.get(i)[row];
+            columns.get(i)[row] = value;
+            return old;
+        }
+
+        @Override public int size() {
+            int size = 0;
+            for (Object[] column : columns) if (column[row] != null) size++;
+            return size;
+        }
+
+        @Override public boolean isEmpty() {
+            for (Object[] column : columns) if (column[row] != null) return false;
+            return true;
+        }
+
+        // a view of the row's non-null cells, in column order, read as it is iterated
+        @Override public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<Entry<String, Object>>() {
+                @Override public int size() { return RowView.this.size(); }
+                @Override public boolean isEmpty() { return RowView.this.isEmpty(); }
+                @Override public Iterator<Entry<String, Object>> iterator() {
+                    final Iterator<Map.Entry<String, Integer>> columnIterator = index.entrySet().iterator();
+                    return new Iterator<Entry<String, Object>>() {
+                        private Entry<String, Object> next = advance();
+
+                        private Entry<String, Object> advance() {
+                            while (columnIterator.hasNext()) {
+                                final Map.Entry<String, Integer> column = columnIterator.next();
+                                final Object value = columns.get(column.getValue())[row];
+                                if (value != null) return new SimpleImmutableEntry<>(column.getKey(), value);
+                            }
+                            return null;
+                        }
+
+                        @Override public boolean hasNext() { return next != null; }
+
+                        @Override public Entry<String, Object> next() {
+                            if (next == null) throw new NoSuchElementException();
+                            final Entry<String, Object> entry = next;
+                            next = advance();
+                            return entry;
+                        }
+
+                        @Override public void remove() { throw new UnsupportedOperationException("remove"); }
+                    };
+                }
+            };
+        }
+    }
+
+}
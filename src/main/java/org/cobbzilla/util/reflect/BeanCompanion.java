@@ -0,0 +1,98 @@
+package org.cobbzilla.util.reflect;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Map;
+
+/**
+ * Compiled-in accessors for one bean class, written by GenerateAccessorsProcessor for classes annotated
+ * with GenerateAccessors. The companion of a class named Foo is Foo_Companion, in the same package
+ * (for a nested class Outer.Foo, it is Outer_Foo_Companion).
+ *
+ * ReflectionUtil looks for a companion once per class. When there is one, its accessors are used for get and set,
+ * and copy and toMap are done by the companion, so no reflection is needed to call the bean's methods.
+ * A companion is only used for objects of exactly its class, not subclasses.
+ *
+ * @param <T> the bean class
+ */
+@Slf4j
+public abstract class BeanCompanion<T> {
+
+    public static final String SUFFIX = "_Companion";
+
+    private static final BeanCompanion NONE = new BeanCompanion() {
+        @Override public PropertyAccessor accessor(String methodName, Class[] paramTypes) { return null; }
+        @Override public int copy(Object dest, Object src) { throw new UnsupportedOperationException("copy"); }
+        @Override public Map<String, Object> toMap(Object thing) { throw new UnsupportedOperationException("toMap"); }
+    };
+
+    private static final ClassValue<BeanCompanion> companions = new ClassValue<BeanCompanion>() {
+        @Override protected BeanCompanion computeValue(Class<?> type) {
+            if (type.isPrimitive() || type.isArray() || type.getClassLoader() == null) return NONE;
+            try {
+                final Class<?> companion = Class.forName(companionName(type), true, type.getClassLoader());
+                return (BeanCompanion) companion.newInstance();
+            } catch (ClassNotFoundException e) {
+                return NONE;
+            } catch (Exception e) {
+                throw new IllegalStateException("BeanCompanion: error loading companion for "+type.getName()+": "+e, e);
+            }
+        }
+    };
+
+    /**
+     * @param type a class
+     * @return the generated companion of the class, or null if there is none
+     */
+    public static <T> BeanCompanion<T> forClass(Class<T> type) {
+        final BeanCompanion companion = companions.get(type);
+        return companion == NONE ? null : companion;
+    }
+
+    /**
+     * @param type a class
+     * @return the binary name its companion would have
+     */
+    public static String companionName(Class<?> type) {
+        final String name = type.getName();
+        final int lastDot = name.lastIndexOf('.');
+        return name.substring(0, lastDot + 1) + name.substring(lastDot + 1).replace('$', '_') + SUFFIX;
+    }
+
+    /**
+     * @param methodName the name of a public getter or setter of the bean class
+     * @param paramTypes the method's parameter types
+     * @return an accessor that calls the method directly, or null if the companion does not have one for it
+     */
+    public abstract PropertyAccessor accessor(String methodName, Class[] paramTypes);
+
+    /**
+     * Does what ReflectionUtil.copy(dest, src) does, for two objects of the bean class
+     * @throws Exception if a getter of src or a setter of dest throws one
+     */
+    public abstract int copy(T dest, T src) throws Exception;
+
+    /**
+     * Does what ReflectionUtil.toMap(thing) does, for an object of the bean class
+     * @throws Exception if a getter throws one
+     */
+    public abstract Map<String, Object> toMap(T thing) throws Exception;
+
+    /**
+     * The slow path of a generated accessor, for a target or value it cannot pass straight to the method: calls the
+     * method with Method.invoke, which widens the value or throws what reflection would. Errors are not wrapped.
+     */
+    protected static Object invoke(Class<?> type, String name, Class[] paramTypes, Object target, Object... args) throws Exception {
+        try {
+            return type.getMethod(name, paramTypes).invoke(target, args);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw e;
+        }
+    }
+
+    // as in CopyPlan, a destination getter that fails just means its current value is unknown
+    protected static void destGetterFailed(Exception e) { log.debug("copy: error calling getter on dest: "+e); }
+
+}
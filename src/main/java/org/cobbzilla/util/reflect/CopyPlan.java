@@ -0,0 +1,183 @@
+package org.cobbzilla.util.reflect;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.ArrayUtils;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * What ReflectionUtil.copy does for one combination of source class, destination class, fields and excludes:
+ * the getters to read, in order, and the setter each value goes to. Plans are built once and reused,
+ * so a copy just runs through the list.
+ */
+@Slf4j
+public class CopyPlan {
+
+    // past this many plans for one source class, new plans are built but not kept (in case field lists come from data)
+    public static final int MAX_PLANS_PER_CLASS = 100;
+
+    private static final ClassValue<ConcurrentMap<Key, CopyPlan>> plans = new ClassValue<ConcurrentMap<Key, CopyPlan>>() {
+        @Override protected ConcurrentMap<Key, CopyPlan> computeValue(Class<?> type) { return new ConcurrentHashMap<>(); }
+    };
+
+    private static final class Key {
+        private final Class<?> destClass;
+        private final String[] fields;
+        private final String[] exclude;
+        private final int hash;
+
+        Key(Class<?> destClass, String[] fields, String[] exclude) {
+            this.destClass = destClass;
+            this.fields = fields;
+            this.exclude = exclude;
+            this.hash = 31 * (31 * destClass.hashCode() + Arrays.hashCode(fields)) + Arrays.hashCode(exclude);
+        }
+
+        @Override public int hashCode() { return hash; }
+
+        @Override public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            final Key other = (Key) o;
+            return destClass == other.destClass && Arrays.equals(fields, other.fields) && Arrays.equals(exclude, other.exclude);
+        }
+    }
+
+    /**
+     * @param srcClass the class of the object copied from
+     * @param destClass the class of the object copied to. every Map is treated the same.
+     * @param fields if not null, only these fields are copied
+     * @param exclude if not null, these fields are not copied
+     * @return the plan for copying
+     */
+    public static CopyPlan forClasses(Class<?> srcClass, Class<?> destClass, String[] fields, String[] exclude) {
+        if (Map.class.isAssignableFrom(destClass)) destClass = Map.class;
+        final ConcurrentMap<Key, CopyPlan> srcPlans = plans.get(srcClass);
+        final Key key = new Key(destClass, fields, exclude);
+        CopyPlan plan = srcPlans.get(key);
+        if (plan == null) {
+            plan = new CopyPlan(srcClass, destClass, fields, exclude);
+            if (srcPlans.size() < MAX_PLANS_PER_CLASS) {
+                // the key keeps its own copies of the arrays, the caller may change theirs
+                srcPlans.putIfAbsent(new Key(destClass, copyOf(fields), copyOf(exclude)), plan);
+            }
+        }
+        return plan;
+    }
+
+    private static String[] copyOf(String[] array) { return array == null ? null : array.clone(); }
+
+    @AllArgsConstructor
+    private static final class Step {
+        private final String fieldName;
+        private final PropertyAccessor getter;
+        private final PropertyAccessor setter;     // null when copying to a Map
+        private final boolean destHasGetter;       // can getter be called on the destination, to compare values
+    }
+
+    private final boolean toMap;
+    private final Step[] steps;
+
+    private CopyPlan(Class<?> srcClass, Class<?> destClass, String[] fields, String[] exclude) {
+        toMap = destClass == Map.class;
+        final AccessorRegistry srcAccessors = AccessorRegistry.forClass(srcClass);
+        final AccessorRegistry destAccessors = AccessorRegistry.forClass(destClass);
+        final List<Step> steps = new ArrayList<>();
+
+        for (Method getter : srcClass.getMethods()) {
+            // only look for getters on the source object (methods with no arguments that have a return value)
+            if (getter.getParameterTypes().length != 0) continue;
+            if (getter.getReturnType().equals(Void.class)) continue;
+
+            // and it must be named appropriately
+            final String fieldName = ReflectionUtil.fieldName(getter.getName());
+            if (fieldName == null || ArrayUtils.contains(exclude, fieldName)) continue;
+
+            // if specific fields were given, it must be one of those
+            if (fields != null && !ArrayUtils.contains(fields, fieldName)) continue;
+
+            // getter must not be marked Transient
+            if (isTransient(getter)) continue;
+
+            // what would the setter be called?
+            final String setterName = ReflectionUtil.setterForGetter(getter.getName());
+            if (setterName == null) continue;
+
+            // get the setter method on the destination object
+            PropertyAccessor setter = null;
+            if (!toMap) {
+                try {
+                    setter = destAccessors.accessor(destClass.getMethod(setterName, getter.getReturnType()));
+                } catch (Exception e) {
+                    log.debug("copy: setter not found: " + setterName);
+                    continue;
+                }
+            }
+
+            steps.add(new Step(fieldName, srcAccessors.accessor(getter), setter,
+                               getter.getDeclaringClass().isAssignableFrom(destClass)));
+        }
+        this.steps = steps.toArray(new Step[steps.size()]);
+    }
+
+    private static boolean isTransient(Method getter) {
+        for (Annotation a : getter.getAnnotations()) {
+            for (Class<?> i : a.getClass().getInterfaces()) {
+                if (i.getSimpleName().equals("Transient")) return true;
+            }
+        }
+        return false;
+    }
+
+    // for reading a source object one field at a time (see BeanColumns)
+    int size() { return steps.length; }
+    String fieldName(int step) { return steps[step].fieldName; }
+    Object get(int step, Object src) throws Exception { return steps[step].getter.get(src); }
+
+    /**
+     * Copy each non-null value from src to dest, if dest does not already have an equal value
+     * @param dest destination object, of the destination class this plan was made for
+     * @param src source object, of the source class this plan was made for
+     * @return count of fields copied
+     * @throws Exception if a getter or setter throws one
+     */
+    public int copy(Object dest, Object src) throws Exception {
+        int copyCount = 0;
+        for (Step step : steps) {
+            // do not copy null fields (should this be configurable?)
+            final Object srcValue = step.getter.get(src);
+            if (srcValue == null) continue;
+
+            // does the dest have a getter? if so grab the current value
+            Object destValue = null;
+            if (toMap) {
+                destValue = ((Map) dest).get(step.fieldName);
+            } else if (step.destHasGetter) {
+                try {
+                    destValue = step.getter.get(dest);
+                } catch (Exception e) {
+                    log.debug("copy: error calling getter on dest: "+e);
+                }
+            }
+
+            // copy the value from src to dest, if it's different
+            if (!srcValue.equals(destValue)) {
+                if (toMap) {
+                    ((Map) dest).put(step.fieldName, srcValue);
+                } else {
+                    step.setter.set(dest, srcValue);
+                }
+                copyCount++;
+            }
+        }
+        return copyCount;
+    }
+
+}
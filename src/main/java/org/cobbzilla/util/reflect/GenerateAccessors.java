@@ -0,0 +1,14 @@
+package org.cobbzilla.util.reflect;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a bean class for GenerateAccessorsProcessor, which writes a BeanCompanion for it at compile time.
+ * ReflectionUtil finds the companion at runtime and uses it instead of reflection.
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface GenerateAccessors {}
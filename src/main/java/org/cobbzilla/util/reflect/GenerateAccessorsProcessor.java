@@ -0,0 +1,229 @@
+package org.cobbzilla.util.reflect;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.*;
+
+/**
+ * Writes a BeanCompanion for each class annotated with GenerateAccessors.
+ *
+ * This processor is not registered as a service, so it only runs when asked for. With maven, add this artifact to
+ * the annotationProcessorPaths of maven-compiler-plugin and list this class (and lombok, if used) in annotationProcessors.
+ * With javac, use -processor org.cobbzilla.util.reflect.GenerateAccessorsProcessor.
+ *
+ * Only public, non-static methods are used. Getters are zero-argument methods named getXXX or isXXX that return
+ * something. Setters are one-argument methods named setXXX. These are the same methods ReflectionUtil would find.
+ * Generated accessors throw the same exceptions as PropertyAccessor's, going through Method.invoke for a target or
+ * value they cannot pass to the method directly.
+ */
+@SupportedAnnotationTypes("org.cobbzilla.util.reflect.GenerateAccessors")
+public class GenerateAccessorsProcessor extends AbstractProcessor {
+
+    private static final String[] TO_MAP_EXCLUDES = {"declaringClass", "class"};
+
+    @Override public SourceVersion getSupportedSourceVersion() { return SourceVersion.latestSupported(); }
+
+    @Override public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() != ElementKind.CLASS) {
+                    error(element, "@GenerateAccessors can only be used on classes");
+                } else if (element.getModifiers().contains(Modifier.PRIVATE)) {
+                    error(element, "@GenerateAccessors cannot be used on private classes");
+                } else {
+                    try {
+                        generate((TypeElement) element);
+                    } catch (IOException e) {
+                        error(element, "error writing companion: " + e);
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private void generate(TypeElement bean) throws IOException {
+        final Types types = processingEnv.getTypeUtils();
+        final String pkg = processingEnv.getElementUtils().getPackageOf(bean).getQualifiedName().toString();
+        final String beanType = types.erasure(bean.asType()).toString();
+        final String binaryName = processingEnv.getElementUtils().getBinaryName(bean).toString();
+        final String simpleBinaryName = pkg.isEmpty() ? binaryName : binaryName.substring(pkg.length() + 1);
+        final String companion = simpleBinaryName.replace('$', '_') + BeanCompanion.SUFFIX;
+
+        final List<ExecutableElement> getters = new ArrayList<>();
+        final List<ExecutableElement> setters = new ArrayList<>();
+        for (ExecutableElement m : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(bean))) {
+            if (!m.getModifiers().contains(Modifier.PUBLIC) || m.getModifiers().contains(Modifier.STATIC)) continue;
+            final String name = m.getSimpleName().toString();
+            if (m.getParameters().isEmpty() && m.getReturnType().getKind() != TypeKind.VOID && prefix(name) != null && !name.startsWith("set")) {
+                getters.add(m);
+            } else if (m.getParameters().size() == 1 && name.startsWith("set") && name.length() > 3) {
+                setters.add(m);
+            }
+        }
+
+        final PrintWriter out = new PrintWriter(processingEnv.getFiler().createSourceFile(
+                pkg.isEmpty() ? companion : pkg + "." + companion, bean).openWriter());
+        try {
+            if (!pkg.isEmpty()) out.println("package " + pkg + ";\n");
+            out.println("// generated by " + getClass().getName() + " from " + beanType + ", do not edit");
+            out.println("@SuppressWarnings({\"unchecked\", \"rawtypes\"})");
+            out.println("public class " + companion + " extends org.cobbzilla.util.reflect.BeanCompanion<" + beanType + "> {\n");
+            writeAccessor(out, beanType, getters, setters);
+            writeCopy(out, beanType, getters, setters);
+            writeToMap(out, beanType, getters);
+            out.println("}");
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeAccessor(PrintWriter out, String beanType, List<ExecutableElement> getters, List<ExecutableElement> setters) {
+        final Map<String, List<ExecutableElement>> byName = new LinkedHashMap<>();
+        for (ExecutableElement m : getters) add(byName, m);
+        for (ExecutableElement m : setters) add(byName, m);
+
+        out.println("    @Override public org.cobbzilla.util.reflect.PropertyAccessor accessor(String methodName, Class[] paramTypes) {");
+        out.println("        switch (methodName) {");
+        for (Map.Entry<String, List<ExecutableElement>> entry : byName.entrySet()) {
+            final String name = entry.getKey();
+            out.println("            case \"" + name + "\":");
+            for (ExecutableElement m : entry.getValue()) {
+                if (m.getParameters().isEmpty()) {
+                    out.println("                if (paramTypes.length == 0) return new org.cobbzilla.util.reflect.PropertyAccessor(null) {");
+                    out.println("                    @Override public Object get(Object target) throws Exception {");
+                    out.println("                        if (!(target instanceof " + beanType + ")) return invoke(" + beanType + ".class, \"" + name + "\", new Class[0], target);");
+                    out.println("                        try { return ((" + beanType + ") target)." + name + "(); } catch (Error e) { throw e; } catch (Throwable t) { throw new java.lang.reflect.InvocationTargetException(t); }");
+                    out.println("                    }");
+                    out.println("                    @Override public void set(Object target, Object value) { throw new UnsupportedOperationException(\"" + name + " is a getter\"); }");
+                } else {
+                    final TypeMirror param = m.getParameters().get(0).asType();
+                    final String paramType = erasure(param);
+                    out.println("                if (paramTypes.length == 1 && paramTypes[0] == " + paramType + ".class) return new org.cobbzilla.util.reflect.PropertyAccessor(null) {");
+                    out.println("                    @Override public Object get(Object target) { throw new UnsupportedOperationException(\"" + name + " is a setter\"); }");
+                    out.println("                    @Override public void set(Object target, Object value) throws Exception {");
+                    final String valueType = boxed(param);
+                    final String nullValue = param.getKind().isPrimitive() ? "" : " || value == null";
+                    out.println("                        if (!(target instanceof " + beanType + ") || !(value instanceof " + valueType + nullValue + ")) {");
+                    out.println("                            invoke(" + beanType + ".class, \"" + name + "\", new Class[] {" + paramType + ".class}, target, value);");
+                    out.println("                            return;");
+                    out.println("                        }");
+                    out.println("                        try { ((" + beanType + ") target)." + name + "((" + valueType + ") value); } catch (Error e) { throw e; } catch (Throwable t) { throw new java.lang.reflect.InvocationTargetException(t); }");
+                    out.println("                    }");
+                }
+                out.println("                };");
+            }
+            out.println("                break;");
+        }
+        out.println("        }");
+        out.println("        return null;");
+        out.println("    }\n");
+    }
+
+    private void add(Map<String, List<ExecutableElement>> byName, ExecutableElement m) {
+        final String name = m.getSimpleName().toString();
+        List<ExecutableElement> list = byName.get(name);
+        if (list == null) {
+            list = new ArrayList<>();
+            byName.put(name, list);
+        }
+        list.add(m);
+    }
+
+    // same rules as ReflectionUtil.copy: non-null values whose setter takes exactly the getter's type,
+    // skipping Transient getters and values the destination already has (ignoring errors from the destination's getter)
+    private void writeCopy(PrintWriter out, String beanType, List<ExecutableElement> getters, List<ExecutableElement> setters) {
+        out.println("    @Override public int copy(" + beanType + " dest, " + beanType + " src) throws Exception {");
+        out.println("        int copyCount = 0;");
+        out.println("        Object srcValue;");
+        out.println("        Object destValue;");
+        for (ExecutableElement getter : getters) {
+            if (isTransient(getter)) continue;
+            final ExecutableElement setter = setterFor(getter, setters);
+            if (setter == null) continue;
+            final String get = getter.getSimpleName().toString();
+            out.println("        srcValue = src." + get + "();");
+            out.println("        if (srcValue != null) {");
+            out.println("            destValue = null;");
+            out.println("            try { destValue = dest." + get + "(); } catch (Exception e) { destGetterFailed(e); }");
+            out.println("            if (!srcValue.equals(destValue)) {");
+            out.println("                dest." + setter.getSimpleName() + "((" + boxed(setter.getParameters().get(0).asType()) + ") srcValue);");
+            out.println("                copyCount++;");
+            out.println("            }");
+            out.println("        }");
+        }
+        out.println("        return copyCount;");
+        out.println("    }\n");
+    }
+
+    // same rules as ReflectionUtil.toMap: non-null values of every getter that is not Transient or excluded
+    private void writeToMap(PrintWriter out, String beanType, List<ExecutableElement> getters) {
+        out.println("    @Override public java.util.Map<String, Object> toMap(" + beanType + " thing) throws Exception {");
+        out.println("        final java.util.Map<String, Object> map = new java.util.HashMap<>();");
+        out.println("        Object value;");
+        for (ExecutableElement getter : getters) {
+            final String get = getter.getSimpleName().toString();
+            final String field = fieldName(get);
+            if (isTransient(getter) || Arrays.asList(TO_MAP_EXCLUDES).contains(field)) continue;
+            out.println("        value = thing." + get + "();");
+            out.println("        if (value != null) map.put(\"" + field + "\", value);");
+        }
+        out.println("        return map;");
+        out.println("    }\n");
+    }
+
+    private ExecutableElement setterFor(ExecutableElement getter, List<ExecutableElement> setters) {
+        final Types types = processingEnv.getTypeUtils();
+        final String get = getter.getSimpleName().toString();
+        final String setterName = "set" + get.substring(prefix(get).length());
+        for (ExecutableElement setter : setters) {
+            if (setter.getSimpleName().contentEquals(setterName)
+                    && types.isSameType(types.erasure(setter.getParameters().get(0).asType()), types.erasure(getter.getReturnType()))) {
+                return setter;
+            }
+        }
+        return null;
+    }
+
+    private boolean isTransient(ExecutableElement m) {
+        for (AnnotationMirror a : m.getAnnotationMirrors()) {
+            if (a.getAnnotationType().asElement().getSimpleName().contentEquals("Transient")) return true;
+        }
+        return false;
+    }
+
+    private static String prefix(String name) {
+        if (name.startsWith("get") && name.length() > 3) return "get";
+        if (name.startsWith("is") && name.length() > 2) return "is";
+        return null;
+    }
+
+    // same as ReflectionUtil.fieldName
+    private static String fieldName(String getter) {
+        final String s = getter.substring(prefix(getter).length());
+        return s.length() == 1 ? s.toLowerCase() : s.substring(0, 1).toLowerCase() + s.substring(1);
+    }
+
+    private String erasure(TypeMirror type) { return processingEnv.getTypeUtils().erasure(type).toString(); }
+
+    private String boxed(TypeMirror type) {
+        return type.getKind().isPrimitive()
+                ? processingEnv.getTypeUtils().boxedClass((javax.lang.model.type.PrimitiveType) type).getQualifiedName().toString()
+                : erasure(type);
+    }
+
+}
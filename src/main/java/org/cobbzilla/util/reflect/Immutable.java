@@ -1,34 +1,115 @@
 package org.cobbzilla.util.reflect;
 
-import lombok.AllArgsConstructor;
-
+import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static org.cobbzilla.util.daemon.ZillaRuntime.die;
 
-@AllArgsConstructor
+/**
+ * Read-only views of objects, as proxies of all the interfaces the object's class implements.
+ *
+ * Wrapping is cheap: the proxy class and its constructor are looked up, and which of its interfaces' methods may be
+ * called is worked out, once per class of object wrapped. This is kept with the class (in a ClassValue), so it does
+ * not keep classes or their class loaders from being unloaded. A class can also have a hand-written
+ * (or generated) view class registered with registerView, which is then used instead of a proxy.
+ */
 public class Immutable<T> implements InvocationHandler {
 
-    private T obj;
+    private final T obj;
+    private final ProxyInfo info;
 
-    public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+    public Immutable(T obj) { this(obj, proxyInfo.get(obj.getClass())); }
+
+    private Immutable(T obj, ProxyInfo info) {
+        this.obj = obj;
+        this.info = info;
+    }
+
+    private static final ConcurrentMap<Class<?>, Class<?>> views = new ConcurrentHashMap<>();
+
+    private static final ClassValue<ProxyInfo> proxyInfo = new ClassValue<ProxyInfo>() {
+        @Override protected ProxyInfo computeValue(Class<?> type) { return new ProxyInfo(type); }
+    };
+
+    // what wrapping objects of one class needs: the proxy class's constructor, and which methods may be called
+    private static class ProxyInfo {
+
+        // null if proxies must be made the slow way
+        private final Constructor<?> constructor;
+
+        // method of one of the class's interfaces -> whether it may be called through the view. never changed once built
+        private final Map<Method, Boolean> allowed = new HashMap<>();
 
+        ProxyInfo(Class<?> type) {
+            final Class<?>[] interfaces = type.getInterfaces();
+            for (Class<?> i : interfaces) {
+                for (Method m : i.getMethods()) allowed.put(m, isAllowed(m));
+            }
+            constructor = proxyConstructor(type, interfaces);
+        }
+
+        private static Constructor<?> proxyConstructor(Class<?> type, Class<?>[] interfaces) {
+            final Class<?> proxyClass = Proxy.getProxyClass(type.getClassLoader(), interfaces);
+            if (!Modifier.isPublic(proxyClass.getModifiers())) return null;
+            try {
+                return proxyClass.getConstructor(InvocationHandler.class);
+            } catch (NoSuchMethodException e) {
+                return null;
+            }
+        }
+
+        boolean allowed(Method m) {
+            final Boolean ok = allowed.get(m);
+            // methods of Object (equals, hashCode, toString) are not in the map
+            return ok != null ? ok : isAllowed(m);
+        }
+    }
+
+    private static boolean isAllowed(Method m) {
         final String mName = m.getName();
-        if (!(mName.startsWith("get")
+        return mName.startsWith("get")
                 || mName.startsWith("is")
                 || m.getParameterTypes().length > 0
-                || Void.class.isAssignableFrom(m.getReturnType())
-        )) die("invoke("+obj.getClass().getSimpleName()+"."+mName+"): not a zero-arg getter or returns void: "+mName);
+                || Void.class.isAssignableFrom(m.getReturnType());
+    }
 
+    public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+        if (!info.allowed(m)) die("invoke("+obj.getClass().getSimpleName()+"."+m.getName()+"): not a zero-arg getter or returns void: "+m.getName());
         return m.invoke(obj, args);
     }
 
     public static <T> T wrap(T thing) {
+        if (!views.isEmpty()) {
+            final Class<?> view = views.get(thing.getClass());
+            if (view != null) return (T) ReflectionUtil.instantiate(view, thing);
+        }
+
+        final ProxyInfo info = proxyInfo.get(thing.getClass());
+        if (info.constructor != null) {
+            try {
+                return (T) info.constructor.newInstance(new Immutable<>(thing, info));
+            } catch (Exception e) {
+                return die("wrap: error creating proxy for "+thing.getClass().getName()+": "+e, e);
+            }
+        }
         ClassLoader loader = thing.getClass().getClassLoader();
         Class[] classes = thing.getClass().getInterfaces();
-        return (T) Proxy.newProxyInstance(loader, classes, new Immutable(thing));
+        return (T) Proxy.newProxyInstance(loader, classes, new Immutable<>(thing, info));
     }
 
+    /**
+     * Use a view class, instead of a proxy, for read-only views of objects of a class. The view class must implement
+     * the interfaces that the proxy would have, and have a public constructor that takes the object to be viewed.
+     * @param type the class of objects that will be wrapped
+     * @param view the view class
+     */
+    public static void registerView(Class<?> type, Class<?> view) { views.put(type, view); }
+
 }
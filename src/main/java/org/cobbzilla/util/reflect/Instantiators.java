@@ -0,0 +1,224 @@
+package org.cobbzilla.util.reflect;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.ArrayUtils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static org.cobbzilla.util.reflect.ReflectionUtil.forName;
+
+/**
+ * The constructors of one class, looked up by argument types the first time they are needed and then reused.
+ * Argument types with no matching constructor are remembered too, so failing again is just as cheap.
+ *
+ * Constructors are matched the same way the ReflectionUtil.instantiate methods always have, and called through
+ * a MethodHandle when PropertyAccessor.USE_METHOD_HANDLES is true and the public lookup can see them.
+ */
+@Slf4j
+public class Instantiators {
+
+    private static final ClassValue<Instantiators> registries = new ClassValue<Instantiators>() {
+        @Override protected Instantiators computeValue(Class<?> type) { return new Instantiators(type); }
+    };
+
+    public static Instantiators forClass(Class<?> type) { return registries.get(type); }
+
+    // stand-in for "no such constructor" in the maps below, which cannot hold null
+    private static final Instantiator NONE = new ReflectionInstantiator(null);
+
+    @Getter private final Class<?> type;
+
+    private volatile Instantiator noArguments;
+    private final ConcurrentMap<Class<?>, Instantiator> byArgument = new ConcurrentHashMap<>();
+    private final ConcurrentMap<ArgTypes, Instantiator> byArguments = new ConcurrentHashMap<>();
+
+    private static final class ArgTypes {
+        private final Class<?>[] types;
+        private final int hash;
+
+        ArgTypes(Class<?>[] types) {
+            this.types = types;
+            this.hash = Arrays.hashCode(types);
+        }
+
+        @Override public int hashCode() { return hash; }
+
+        @Override public boolean equals(Object o) { return o instanceof ArgTypes && Arrays.equals(types, ((ArgTypes) o).types); }
+    }
+
+    private Instantiators(Class<?> type) { this.type = type; }
+
+    /**
+     * @return the public no-argument constructor, or null if there is none
+     */
+    public Instantiator forNoArguments() {
+        Instantiator instantiator = noArguments;
+        if (instantiator == null) {
+            try {
+                instantiator = Instantiator.forConstructor(type.getConstructor());
+            } catch (NoSuchMethodException e) {
+                instantiator = NONE;
+            }
+            noArguments = instantiator;
+        }
+        return instantiator == NONE ? null : instantiator;
+    }
+
+    /**
+     * Find a single-argument constructor. The argument's class is tried first, then its superclasses,
+     * then the interfaces it implements directly.
+     * @param argType the class of the argument
+     * @return the constructor, or null if there is none
+     */
+    public Instantiator forArgument(Class<?> argType) {
+        Instantiator instantiator = byArgument.get(argType);
+        if (instantiator == null) {
+            final Constructor<?> constructor = findConstructor(argType);
+            instantiator = constructor == null ? NONE : Instantiator.forConstructor(constructor);
+            remember(byArgument, argType, instantiator);
+        }
+        return instantiator == NONE ? null : instantiator;
+    }
+
+    private Constructor<?> findConstructor(Class<?> argType) {
+        for (Class<?> tryClass = argType; tryClass != null; tryClass = tryClass.getSuperclass()) {
+            try {
+                return type.getConstructor(tryClass);
+            } catch (NoSuchMethodException ignored) {}
+        }
+        // try interfaces. the last one that matches wins
+        Constructor<?> constructor = null;
+        for (Class<?> iface : argType.getInterfaces()) {
+            try {
+                constructor = type.getConstructor(iface);
+            } catch (NoSuchMethodException ignored) {}
+        }
+        return constructor;
+    }
+
+    /**
+     * Find a constructor for the arguments. The first public constructor whose parameter types are assignable
+     * from the classes of the arguments is used. If none is, the constructor whose parameter types exactly match
+     * the classes of the arguments (with any "$$Enhance" proxy suffix removed) is used.
+     * @param arguments the arguments. none may be null.
+     * @return the constructor, or null if there is none
+     */
+    public Instantiator forArguments(Object[] arguments) {
+        final Class<?>[] argTypes = new Class[arguments.length];
+        for (int i=0; i<arguments.length; i++) argTypes[i] = arguments[i].getClass();
+
+        final ArgTypes key = new ArgTypes(argTypes);
+        Instantiator instantiator = byArguments.get(key);
+        if (instantiator == null) {
+            final Constructor<?> constructor = findConstructor(argTypes, arguments);
+            instantiator = constructor == null ? NONE : Instantiator.forConstructor(constructor);
+            remember(byArguments, key, instantiator);
+        }
+        return instantiator == NONE ? null : instantiator;
+    }
+
+    private Constructor<?> findConstructor(Class<?>[] argTypes, Object[] arguments) {
+        checkConstructor:
+        for (Constructor<?> constructor : type.getConstructors()) {
+            final Class<?>[] cParams = constructor.getParameterTypes();
+            if (cParams.length != argTypes.length) continue;
+            for (int i=0; i<cParams.length; i++) {
+                if (!cParams[i].isAssignableFrom(argTypes[i])) continue checkConstructor;
+            }
+            return constructor;
+        }
+        log.warn("instantiate("+type.getName()+"): no matching constructor found, trying with exact match (will probably fail), args="+ArrayUtils.toString(arguments));
+
+        final Class<?>[] parameterTypes = new Class[argTypes.length];
+        for (int i=0; i<argTypes.length; i++) {
+            Class<?> argClass = argTypes[i];
+            final int enhancePos = argClass.getName().indexOf("$$Enhance");
+            if (enhancePos != -1) {
+                argClass = forName(argClass.getName().substring(0, enhancePos));
+            }
+            parameterTypes[i] = argClass;
+        }
+        try {
+            return type.getConstructor(parameterTypes);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private <K> void remember(ConcurrentMap<K, Instantiator> map, K key, Instantiator instantiator) {
+        if (instantiator != NONE || map.size() < AccessorRegistry.MAX_NEGATIVE_LOOKUPS) map.putIfAbsent(key, instantiator);
+    }
+
+    /**
+     * Calls one constructor. Like PropertyAccessor, this uses a MethodHandle where it can, and Constructor.newInstance otherwise.
+     * Exceptions thrown by the constructor come out wrapped in an InvocationTargetException, except Errors,
+     * which are rethrown as they are.
+     */
+    public static abstract class Instantiator {
+
+        @Getter protected final Constructor<?> constructor;
+
+        protected Instantiator(Constructor<?> constructor) { this.constructor = constructor; }
+
+        static Instantiator forConstructor(Constructor<?> constructor) {
+            if (PropertyAccessor.USE_METHOD_HANDLES) {
+                try {
+                    final int count = constructor.getParameterTypes().length;
+                    final MethodHandle handle = MethodHandles.publicLookup().unreflectConstructor(constructor)
+                            .asType(MethodType.genericMethodType(count))
+                            .asSpreader(Object[].class, count);
+                    return new HandleInstantiator(constructor, handle);
+                } catch (IllegalAccessException | RuntimeException e) {
+                    // not visible to the public lookup (e.g. the class is not public), or cannot be called
+                    // through a handle (e.g. the class is abstract). use reflection
+                }
+            }
+            return new ReflectionInstantiator(constructor);
+        }
+
+        public abstract Object newInstance(Object... arguments) throws Exception;
+    }
+
+    private static class HandleInstantiator extends Instantiator {
+
+        private final MethodHandle handle;
+
+        HandleInstantiator(Constructor<?> constructor, MethodHandle handle) {
+            super(constructor);
+            this.handle = handle;
+        }
+
+        @Override public Object newInstance(Object... arguments) throws Exception {
+            try {
+                return (Object) handle.invokeExact(arguments);
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new InvocationTargetException(t);
+            }
+        }
+    }
+
+    private static class ReflectionInstantiator extends Instantiator {
+
+        ReflectionInstantiator(Constructor<?> constructor) { super(constructor); }
+
+        @Override public Object newInstance(Object... arguments) throws Exception {
+            try {
+                return constructor.newInstance(arguments);
+            } catch (InvocationTargetException e) {
+                if (e.getCause() instanceof Error) throw (Error) e.getCause();
+                throw e;
+            }
+        }
+    }
+
+}
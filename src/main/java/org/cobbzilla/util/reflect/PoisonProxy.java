@@ -12,11 +12,16 @@ public class PoisonProxy {
      * Create a proxy object for a class where calling any methods on the object will result in it throwing an exception.
      * @param clazz The class to create a proxy for
      * @param <T> The class to create a proxy for
-     * @return A proxy to the class that will throw an exception if any methods are called on it
+     * @return A proxy to the class that will throw an exception if any methods are called on it.
+     * Poisoned proxies have no state, so the same one is returned every time for the same class.
      */
-    public static <T> T wrap(Class<T> clazz) {
-        return (T) Proxy.newProxyInstance(clazz.getClassLoader(), new Class[]{clazz}, PoisonedInvocationHandler.instance);
-    }
+    public static <T> T wrap(Class<T> clazz) { return (T) proxies.get(clazz); }
+
+    private static final ClassValue<Object> proxies = new ClassValue<Object>() {
+        @Override protected Object computeValue(Class<?> clazz) {
+            return Proxy.newProxyInstance(clazz.getClassLoader(), new Class[]{clazz}, PoisonedInvocationHandler.instance);
+        }
+    };
 
     private static class PoisonedInvocationHandler implements InvocationHandler {
         public static PoisonedInvocationHandler instance = new PoisonedInvocationHandler();
@@ -0,0 +1,141 @@
+package org.cobbzilla.util.reflect;
+
+import lombok.Getter;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Properties;
+
+/**
+ * Calls one getter or setter. By default this uses Method.invoke. If the system property
+ * "cobbzilla.reflect.methodHandles" is true (and "cobbzilla.reflect.noMethodHandles" is not), it uses a MethodHandle
+ * adapted to take and return plain Objects instead, for methods the public lookup can see.
+ * Compare the two with ReflectionBenchmark before turning handles on.
+ *
+ * Either backend behaves like Method.invoke: exceptions thrown by the method itself come out wrapped in an
+ * InvocationTargetException, except Errors, which are rethrown as they are. A target or value of the wrong type
+ * (or a null value for a primitive parameter) is an IllegalArgumentException.
+ * Classes with a BeanCompanion get their accessors from it instead (see AccessorRegistry).
+ */
+public abstract class PropertyAccessor {
+
+    public static final String PROP_METHOD_HANDLES = "cobbzilla.reflect.methodHandles";
+    public static final String PROP_NO_METHOD_HANDLES = "cobbzilla.reflect.noMethodHandles";
+
+    public static final boolean USE_METHOD_HANDLES = useMethodHandles(System.getProperties());
+
+    static boolean useMethodHandles(Properties properties) {
+        return Boolean.parseBoolean(properties.getProperty(PROP_METHOD_HANDLES))
+                && !Boolean.parseBoolean(properties.getProperty(PROP_NO_METHOD_HANDLES));
+    }
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    /** the method called. null for accessors written by GenerateAccessorsProcessor */
+    @Getter protected final Method method;
+
+    protected PropertyAccessor(Method method) { this.method = method; }
+
+    /**
+     * @param method a public method that takes no arguments (a getter) or one argument (a setter)
+     * @return an accessor that calls the method
+     */
+    public static PropertyAccessor forMethod(Method method) { return forMethod(method, USE_METHOD_HANDLES); }
+
+    /**
+     * @param method a public method that takes no arguments (a getter) or one argument (a setter)
+     * @param useMethodHandle true to call the method through a MethodHandle, if the public lookup can see it
+     * @return an accessor that calls the method
+     */
+    public static PropertyAccessor forMethod(Method method, boolean useMethodHandle) {
+        if (useMethodHandle) {
+            try {
+                final MethodHandle handle = MethodHandles.publicLookup().unreflect(method);
+                return method.getParameterTypes().length == 0
+                        ? new HandleAccessor(method, handle.asType(GETTER_TYPE))
+                        : new HandleAccessor(method, handle.asType(SETTER_TYPE));
+            } catch (IllegalAccessException e) {
+                // not visible to the public lookup, e.g. declared in a non-public class. use reflection
+            }
+        }
+        return new ReflectionAccessor(method);
+    }
+
+    /** call a getter */
+    public abstract Object get(Object target) throws Exception;
+
+    /** call a setter */
+    public abstract void set(Object target, Object value) throws Exception;
+
+    boolean isMethodHandle() { return false; }
+
+    private static class HandleAccessor extends PropertyAccessor {
+
+        private final MethodHandle handle;
+        private final Class<?> targetType;
+        private final Class<?> valueType;
+        private final boolean primitive;
+
+        HandleAccessor(Method method, MethodHandle handle) {
+            super(method);
+            this.handle = handle;
+            this.targetType = method.getDeclaringClass();
+            final Class<?>[] params = method.getParameterTypes();
+            this.primitive = params.length == 1 && params[0].isPrimitive();
+            this.valueType = params.length == 0 ? null : primitive ? MethodType.methodType(params[0]).wrap().returnType() : params[0];
+        }
+
+        @Override boolean isMethodHandle() { return true; }
+
+        @Override public Object get(Object target) throws Exception {
+            // anything the handle's conversions would reject goes through Method.invoke, for the same exceptions
+            if (!targetType.isInstance(target)) return invoke(target);
+            try {
+                return (Object) handle.invokeExact(target);
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new InvocationTargetException(t);
+            }
+        }
+
+        @Override public void set(Object target, Object value) throws Exception {
+            if (!targetType.isInstance(target) || (value == null ? primitive : !valueType.isInstance(value))) {
+                // includes values Method.invoke accepts by widening, like an Integer for a long
+                invoke(target, value);
+                return;
+            }
+            try {
+                handle.invokeExact(target, value);
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new InvocationTargetException(t);
+            }
+        }
+    }
+
+    private static class ReflectionAccessor extends PropertyAccessor {
+
+        ReflectionAccessor(Method method) { super(method); }
+
+        @Override public Object get(Object target) throws Exception { return invoke(target); }
+
+        @Override public void set(Object target, Object value) throws Exception { invoke(target, value); }
+    }
+
+    // Method.invoke, except that errors thrown by the method are not wrapped
+    Object invoke(Object target, Object... args) throws Exception {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw e;
+        }
+    }
+
+}
@@ -1,16 +1,13 @@
 package org.cobbzilla.util.reflect;
 
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.beanutils.MethodUtils;
-import org.apache.commons.lang3.ArrayUtils;
-import org.cobbzilla.util.collection.ArrayUtil;
 
 import java.io.Closeable;
-import java.lang.annotation.Annotation;
 import java.lang.reflect.*;
 import java.math.BigDecimal;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -99,7 +96,8 @@ public class ReflectionUtil {
      */
     public static <T> T instantiate(Class<T> clazz) {
         try {
-            return clazz.newInstance();
+            final Instantiators.Instantiator constructor = Instantiators.forClass(clazz).forNoArguments();
+            return constructor != null ? (T) constructor.newInstance() : clazz.newInstance();
         } catch (Exception e) {
             return die("Error instantiating "+clazz+": "+e, e);
         }
@@ -127,32 +125,12 @@ public class ReflectionUtil {
      * @return A new instance of clazz, created using a constructor that matched argument's class.
      */
     public static <T> T instantiate(Class<T> clazz, Object argument) {
-        Constructor<T> constructor = null;
-        Class<?> tryClass = argument.getClass();
-        while (constructor == null) {
-            try {
-                constructor = clazz.getConstructor(tryClass);
-            } catch (NoSuchMethodException e) {
-                if (tryClass.equals(Object.class)) {
-                    // try interfaces
-                    for (Class<?> iface : argument.getClass().getInterfaces()) {
-                        try {
-                            constructor = clazz.getConstructor(iface);
-                        } catch (NoSuchMethodException e2) {
-                            // noop
-                        }
-                    }
-                    break;
-                } else {
-                    tryClass = tryClass.getSuperclass();
-                }
-            }
-        }
+        final Instantiators.Instantiator constructor = Instantiators.forClass(clazz).forArgument(argument.getClass());
         if (constructor == null) {
             die("instantiate: no constructor could be found for class "+clazz.getName()+", argument type "+argument.getClass().getName());
         }
         try {
-            return constructor.newInstance(argument);
+            return (T) constructor.newInstance(argument);
         } catch (Exception e) {
             return die("instantiate("+clazz.getName()+", "+argument+"): "+e, e);
         }
@@ -167,30 +145,9 @@ public class ReflectionUtil {
      */
     public static <T> T instantiate(Class<T> clazz, Object... arguments) {
         try {
-            for (Constructor constructor : clazz.getConstructors()) {
-                final Class<?>[] cParams = constructor.getParameterTypes();
-                if (cParams.length == arguments.length) {
-                    boolean match = true;
-                    for (int i=0; i<cParams.length; i++) {
-                        if (!cParams[i].isAssignableFrom(arguments[i].getClass())) {
-                            match = false; break;
-                        }
-                    }
-                    if (match) return (T) constructor.newInstance(arguments);
-                }
-            }
-            log.warn("instantiate("+clazz.getName()+"): no matching constructor found, trying with exact match (will probably fail), args="+ArrayUtils.toString(arguments));
-
-            final Class<?>[] parameterTypes = new Class[arguments.length];
-            for (int i=0; i<arguments.length; i++) {
-                Class<?> argClass = arguments[i].getClass();
-                final int enhancePos = argClass.getName().indexOf("$$Enhance");
-                if (enhancePos != -1) {
-                    argClass = forName(argClass.getName().substring(0, enhancePos));
-                }
-                parameterTypes[i] = argClass;
-            }
-            return clazz.getConstructor(parameterTypes).newInstance(arguments);
+            final Instantiators.Instantiator constructor = Instantiators.forClass(clazz).forArguments(arguments);
+            if (constructor == null) throw new NoSuchMethodException(clazz.getName()+".<init>"+Arrays.toString(arguments));
+            return (T) constructor.newInstance(arguments);
 
         } catch (Exception e) {
             return die("instantiate("+clazz.getName()+", "+Arrays.toString(arguments)+"): "+e, e);
@@ -205,8 +162,6 @@ public class ReflectionUtil {
      */
     public static <T> T copy(T thing) { return (T) instantiate(thing.getClass(), thing); }
 
-    private enum Accessor { get, set }
-
     /**
      * Copies fields from src to dest. Code is easier to read if this method is understdood to be like an assignment statement, dest = src
      *
@@ -252,83 +207,15 @@ public class ReflectionUtil {
      * @return count of fields copied
      */
     public static <T> int copy (T dest, T src, String[] fields, String[] exclude) {
-        int copyCount = 0;
-        final boolean isMap = dest instanceof Map;
         try {
-            checkGetter:
-            for (Method getter : src.getClass().getMethods()) {
-                // only look for getters on the source object (methods with no arguments that have a return value)
-                final Class<?>[] types = getter.getParameterTypes();
-                if (types.length != 0) continue;
-                if (getter.getReturnType().equals(Void.class)) continue;;
-
-                // and it must be named appropriately
-                final String fieldName = fieldName(getter.getName());
-                if (fieldName == null || ArrayUtils.contains(exclude, fieldName)) continue;
-
-                // if specific fields were given, it must be one of those
-                if (fields != null && !ArrayUtils.contains(fields, fieldName)) continue;
-
-                // getter must not be marked Transient
-                final Annotation[] getterNotes = getter.getAnnotations();
-                if (getterNotes != null) {
-                    for (Annotation a : getterNotes) {
-                        final Class<?>[] interfaces = a.getClass().getInterfaces();
-                        if (interfaces != null) {
-                            for (Class<?> i : interfaces) {
-                                if (i.getSimpleName().equals("Transient")) {
-                                    continue checkGetter;
-                                }
-                            }
-                        }
-                    }
-                }
-
-                // what would the setter be called?
-                final String setterName = setterForGetter(getter.getName());
-                if (setterName == null) continue;
-
-                // get the setter method on the destination object
-                Method setter = null;
-                if (!isMap) {
-                    try {
-                        setter = dest.getClass().getMethod(setterName, getter.getReturnType());
-                    } catch (Exception e) {
-                        log.debug("copy: setter not found: " + setterName);
-                        continue;
-                    }
-                }
-
-                // do not copy null fields (should this be configurable?)
-                final Object srcValue = getter.invoke(src);
-                if (srcValue == null) continue;
-
-                // does the dest have a getter? if so grab the current value
-                Object destValue = null;
-                try {
-                    if (isMap) {
-                        destValue = ((Map) dest).get(fieldName);
-                    } else {
-                        destValue = getter.invoke(dest);
-                    }
-                } catch (Exception e) {
-                    log.debug("copy: error calling getter on dest: "+e);
-                }
-
-                // copy the value from src to dest, if it's different
-                if (!srcValue.equals(destValue)) {
-                    if (isMap) {
-                        ((Map) dest).put(fieldName, srcValue);
-                    } else {
-                        setter.invoke(dest, srcValue);
-                    }
-                    copyCount++;
-                }
+            if (fields == null && exclude == null && dest.getClass() == src.getClass()) {
+                final BeanCompanion<T> companion = (BeanCompanion<T>) BeanCompanion.forClass(src.getClass());
+                if (companion != null) return companion.copy(dest, src);
             }
+            return CopyPlan.forClasses(src.getClass(), dest.getClass(), fields, exclude).copy(dest, src);
         } catch (Exception e) {
             throw new IllegalArgumentException("Error copying "+dest.getClass().getSimpleName()+" from src="+src+": "+e, e);
         }
-        return copyCount;
     }
 
     public static String fieldName(String method) {
@@ -353,31 +240,54 @@ public class ReflectionUtil {
      */
     public static <T> T copyFromMap (T dest, Map<String, Object> src) {
         for (Map.Entry<String, Object> entry : src.entrySet()) {
-            final String key = entry.getKey();
-            final Object value = entry.getValue();
-            if (value != null && Map.class.isAssignableFrom(value.getClass())) {
-                if (hasGetter(dest, key)) {
-                    Map m = (Map) value;
-                    if (m.isEmpty()) continue;
-                    if (m.keySet().iterator().next().getClass().equals(String.class)) {
-                        copyFromMap(get(dest, key), (Map<String, Object>) m);
-                    } else {
-                        log.info("copyFromMap: not recursively copying Map (has non-String keys): " + key);
-                    }
+            copyFromMapEntry(dest, entry.getKey(), entry.getValue());
+        }
+        return dest;
+    }
+
+    static void copyFromMapEntry (Object dest, String key, Object value) {
+        if (value != null && Map.class.isAssignableFrom(value.getClass())) {
+            if (hasGetter(dest, key)) {
+                Map m = (Map) value;
+                if (m.isEmpty()) return;
+                if (m.keySet().iterator().next().getClass().equals(String.class)) {
+                    copyFromMap(get(dest, key), (Map<String, Object>) m);
+                } else {
+                    log.info("copyFromMap: not recursively copying Map (has non-String keys): " + key);
                 }
+            }
+        } else {
+            if (Map.class.isAssignableFrom(dest.getClass())) {// || dest.getClass().getName().equals(HashMap.class.getName())) {
+                ((Map) dest).put(key, value);
             } else {
-                if (Map.class.isAssignableFrom(dest.getClass())) {// || dest.getClass().getName().equals(HashMap.class.getName())) {
-                    ((Map) dest).put(key, value);
-                } else {
-                    if (hasSetter(dest, key, value.getClass())) {
-                        set(dest, key, value);
-                    }
+                if (hasSetter(dest, key, value.getClass())) {
+                    set(dest, key, value);
                 }
             }
         }
-        return dest;
     }
 
+    /**
+     * Call setters on many objects, based on keys and values in Maps. Setters are resolved once for the whole list.
+     * Null values are skipped.
+     * @param dests destination objects
+     * @param src maps of field name -> value, one per destination object
+     * @param <T> type of object
+     * @return the destination objects
+     */
+    public static <T> List<T> copyFromMaps (List<T> dests, List<? extends Map<String, Object>> src) {
+        return BeanColumns.copyFromMaps(dests, src);
+    }
+
+    /**
+     * Call setters on many objects, based on columns of values
+     * @param dests destination objects, one per row
+     * @param src columns of values, as built by toColumns
+     * @param <T> type of object
+     * @return the destination objects
+     */
+    public static <T> List<T> copyFromColumns (List<T> dests, BeanColumns src) { return src.copyTo(dests); }
+
     public static final String[] TO_MAP_STANDARD_EXCLUDES = {"declaringClass", "class"};
 
     /**
@@ -390,11 +300,41 @@ public class ReflectionUtil {
     public static Map<String, Object> toMap(Object thing, String[] fields) { return toMap(thing, fields, TO_MAP_STANDARD_EXCLUDES); }
 
     public static Map<String, Object> toMap(Object thing, String[] fields, String[] exclude) {
+        if (fields == null && Arrays.equals(exclude, TO_MAP_STANDARD_EXCLUDES)) {
+            final BeanCompanion<Object> companion = (BeanCompanion<Object>) BeanCompanion.forClass(thing.getClass());
+            if (companion != null) {
+                try {
+                    return companion.toMap(thing);
+                } catch (Exception e) {
+                    throw new IllegalArgumentException("Error copying HashMap from src="+thing+": "+e, e);
+                }
+            }
+        }
         final Map<String, Object> map = new HashMap<>();
         copy(map, thing, fields, exclude);
         return map;
     }
 
+    /**
+     * Read the fields of many objects at once, like toMap does for one
+     * @param things the objects to read
+     * @return the non-null field values, by column. use asMaps() on the result to view each row as a Map
+     */
+    public static BeanColumns toColumns(List<?> things) { return toColumns(things, null, TO_MAP_STANDARD_EXCLUDES); }
+
+    public static BeanColumns toColumns(List<?> things, String[] fields) { return toColumns(things, fields, TO_MAP_STANDARD_EXCLUDES); }
+
+    public static BeanColumns toColumns(List<?> things, String[] fields, String[] exclude) {
+        return BeanColumns.of(things, fields, exclude);
+    }
+
+    /**
+     * Like toMap, for many objects. The maps are views of one BeanColumns, and share its column index.
+     * @param things the objects to read
+     * @return one map per object
+     */
+    public static List<Map<String, Object>> toMaps(List<?> things) { return toColumns(things).asMaps(); }
+
     /**
      * Find the concrete class for the first declared parameterized class variable
      * @param clazz The class to search for parameterized types
@@ -402,18 +342,17 @@ public class ReflectionUtil {
      */
     public static Class getFirstTypeParam(Class clazz) { return getTypeParam(clazz, 0); }
 
-    public static Class getTypeParam(Class clazz, int index) {
-        // todo: add a cache on this thing... could do wonders
-        Class check = clazz;
-        while (check.getGenericSuperclass() == null || !(check.getGenericSuperclass() instanceof ParameterizedType)) {
-            check = check.getSuperclass();
-            if (check.equals(Object.class)) die("getTypeParam("+clazz.getName()+"): no type parameters found");
-        }
-        final ParameterizedType parameterizedType = (ParameterizedType) check.getGenericSuperclass();
-        final Type[] actualTypeArguments = parameterizedType.getActualTypeArguments();
-        if (index >= actualTypeArguments.length) die("getTypeParam("+clazz.getName()+"): "+actualTypeArguments.length+" type parameters found, index "+index+" out of bounds");
-        return (Class) actualTypeArguments[index];
-    }
+    public static Class getTypeParam(Class clazz, int index) { return TypeParams.forClass(clazz).getTypeParam(index); }
+
+    /**
+     * Find what a type parameter of a generic superclass or interface is bound to, resolving type variables
+     * through any classes in between
+     * @param clazz The class to check
+     * @param ancestor A generic superclass or interface of clazz
+     * @param index Which type parameter of the ancestor
+     * @return The class the type parameter is bound to
+     */
+    public static Class getTypeParam(Class clazz, Class ancestor, int index) { return TypeParams.forClass(clazz).getTypeParam(ancestor, index); }
 
     /**
      * Find the concrete class for a parameterized class variable.
@@ -421,33 +360,7 @@ public class ReflectionUtil {
      * @param impl The type (or a supertype) of the parameterized class variable
      * @return The first concrete class found that is assignable to an instance of impl
      */
-    public static Class getFirstTypeParam(Class clazz, Class impl) {
-        // todo: add a cache on this thing... could do wonders
-        Class check = clazz;
-        while (check != null && !check.equals(Object.class)) {
-            Class superCheck = check;
-            Type superType = superCheck.getGenericSuperclass();
-            while (superType != null || !superType.equals(Object.class)) {
-                if (superType instanceof ParameterizedType) {
-                    final ParameterizedType ptype = (ParameterizedType) superType;
-                    final Class<?> rawType = (Class<?>) ptype.getRawType();
-                    if (impl.isAssignableFrom(rawType)) {
-                        return rawType;
-                    }
-                    for (Type t : ptype.getActualTypeArguments()) {
-                        if (impl.isAssignableFrom((Class<?>) t)) {
-                            return (Class<?>) t;
-                        }
-                    }
-
-                } else if (superType instanceof Class) {
-                    superType = ((Class) superType).getGenericSuperclass();
-                }
-            }
-            check = check.getSuperclass();
-        }
-        return null;
-    }
+    public static Class getFirstTypeParam(Class clazz, Class impl) { return TypeParams.forClass(clazz).getFirstTypeParam(impl); }
 
     /**
      * Call a getter. getXXX and isXXX will both be checked.
@@ -458,7 +371,7 @@ public class ReflectionUtil {
      */
     public static Object get(Object object, String field) {
         Object target = object;
-        for (String token : field.split("\\.")) {
+        for (String token : AccessorRegistry.path(field)) {
             if (target == null) return null;
             target = invoke_get(target, token);
         }
@@ -467,13 +380,15 @@ public class ReflectionUtil {
 
     public static boolean hasGetter(Object object, String field) {
         Object target = object;
+        final String[] tokens = AccessorRegistry.path(field);
         try {
-            for (String token : field.split("\\.")) {
-                final String methodName = getAccessorMethodName(Accessor.get, token);
-                target = MethodUtils.invokeExactMethod(target, methodName, null);
+            for (int i=0; i<tokens.length; i++) {
+                if (target == null) return false;
+                final AccessorRegistry accessors = AccessorRegistry.forClass(target.getClass());
+                final Method getter = accessors.getter(tokens[i]);
+                if (getter == null) return false;
+                if (i < tokens.length-1) target = accessors.accessor(getter).get(target);
             }
-        } catch (NoSuchMethodException e) {
-            return false;
         } catch (Exception e) {
             return false;
         }
@@ -487,13 +402,13 @@ public class ReflectionUtil {
      * @param value the value to set
      */
     public static void set(Object object, String field, Object value) {
-        final String[] tokens = field.split("\\.");
+        final String[] tokens = AccessorRegistry.path(field);
         Object target = getTarget(object, tokens);
         if (target != null) invoke_set(target, tokens[tokens.length - 1], value);
     }
 
     public static void setNull(Object object, String field, Class type) {
-        final String[] tokens = field.split("\\.");
+        final String[] tokens = AccessorRegistry.path(field);
         Object target = getTarget(object, tokens);
         if (target != null) invoke_set_null(target, tokens[tokens.length - 1], type);
     }
@@ -512,76 +427,61 @@ public class ReflectionUtil {
 
     public static boolean hasSetter(Object object, String field, Class type) {
         Object target = object;
-        final String[] tokens = field.split("\\.");
+        final String[] tokens = AccessorRegistry.path(field);
         try {
             for (int i=0; i<tokens.length-1; i++) {
-                target = MethodUtils.invokeExactMethod(target, tokens[i], null);
+                final AccessorRegistry accessors = AccessorRegistry.forClass(target.getClass());
+                final Method getter = accessors.getter(tokens[i]);
+                if (getter == null) return false;
+                target = accessors.accessor(getter).get(target);
+                if (target == null) return false;
             }
+            return AccessorRegistry.forClass(target.getClass()).exactSetter(tokens[tokens.length-1], type) != null;
 
-            target.getClass().getMethod(getAccessorMethodName(Accessor.set, tokens[tokens.length-1]), type);
-
-        } catch (NoSuchMethodException e) {
-            return false;
         } catch (Exception e) {
             return false;
         }
-        return true;
-    }
-
-    private static String getAccessorMethodName(Accessor accessor, String token) {
-        return token.length() == 1 ? accessor.name() +token.toUpperCase() : accessor.name() + token.substring(0, 1).toUpperCase() + token.substring(1);
     }
 
     private static Object invoke_get(Object target, String token) {
-        final String methodName = getAccessorMethodName(Accessor.get, token);
+        final AccessorRegistry accessors = AccessorRegistry.forClass(target.getClass());
+        final Method getter = accessors.getter(token);
+        if (getter == null) {
+            return die("Error calling "+AccessorRegistry.accessorName("get", token)+" and "+AccessorRegistry.accessorName("is", token)+": no such method on "+target.getClass().getName());
+        }
         try {
-            target = MethodUtils.invokeMethod(target, methodName, null);
+            return accessors.accessor(getter).get(target);
         } catch (Exception e) {
-            final String isMethod = methodName.replaceFirst("get", "is");
-            try {
-                target = MethodUtils.invokeMethod(target, isMethod, null);
-            } catch (Exception e2) {
-                return die("Error calling "+methodName+" and "+isMethod+": "+e+", "+e2);
-            }
+            return die("Error calling "+getter.getName()+": "+e, e);
         }
-        return target;
     }
 
     private static void invoke_set(Object target, String token, Object value) {
-        final String methodName = getAccessorMethodName(Accessor.set, token);
+        final AccessorRegistry accessors = AccessorRegistry.forClass(target.getClass());
         if (value == null) {
-            // try to find a single-arg method named methodName...
-            Method found = null;
-            for (Method m : target.getClass().getMethods()) {
-                if (m.getName().equals(methodName) && m.getParameterTypes().length == 1) {
-                    if (found != null) {
-                        die("invoke_set: value was null and multiple single-arg methods named " + methodName + " exist");
-                    } else {
-                        found = m;
-                    }
-                }
-            }
-            if (found == null) die("invoke_set: no method " + methodName + " found on target: " + target);
+            // try to find a single-arg method named setXXX...
+            final Method setter = accessors.nullSetter(token);
             try {
-                found.invoke(target, ArrayUtil.SINGLE_NULL_OBJECT);
+                accessors.accessor(setter).set(target, null);
             } catch (Exception e) {
-                die("Error calling " + methodName + ": " + e);
+                die("Error calling " + setter.getName() + ": " + e);
             }
         } else {
-            try {
-                MethodUtils.invokeMethod(target, methodName, value);
-            } catch (Exception e) {
-                die("Error calling " + methodName + ": " + e);
-            }
+            invoke_set(target, accessors, accessors.setter(token, value.getClass()), token, value);
         }
     }
 
     private static void invoke_set_null(Object target, String token, Class type) {
-        final String methodName = getAccessorMethodName(Accessor.set, token);
+        final AccessorRegistry accessors = AccessorRegistry.forClass(target.getClass());
+        invoke_set(target, accessors, accessors.setter(token, type), token, null);
+    }
+
+    private static void invoke_set(Object target, AccessorRegistry accessors, Method setter, String token, Object value) {
+        if (setter == null) die("Error calling "+AccessorRegistry.accessorName("set", token)+": no such method on "+target.getClass().getName());
         try {
-            MethodUtils.invokeMethod(target, methodName, new Object[] { null }, new Class[] { type });
+            accessors.accessor(setter).set(target, value);
         } catch (Exception e) {
-            die("Error calling "+methodName+": "+e);
+            die("Error calling " + setter.getName() + ": " + e);
         }
     }
 
@@ -607,45 +507,7 @@ public class ReflectionUtil {
      */
     @SuppressWarnings("unchecked")
     public static <T> Class<T> getTypeParameter(Class<?> klass, Class<? super T> bound) {
-        Type t = checkNotNull(klass);
-        while (t instanceof Class<?>) {
-            t = ((Class<?>) t).getGenericSuperclass();
-        }
-        /* This is not guaranteed to work for all cases with convoluted piping
-         * of type parameters: but it can at least resolve straight-forward
-         * extension with single type parameter (as per [Issue-89]).
-         * And when it fails to do that, will indicate with specific exception.
-         */
-        if (t instanceof ParameterizedType) {
-            // should typically have one of type parameters (first one) that matches:
-            for (Type param : ((ParameterizedType) t).getActualTypeArguments()) {
-                if (param instanceof Class<?>) {
-                    final Class<T> cls = determineClass(bound, param);
-                    if (cls != null) { return cls; }
-                }
-                else if (param instanceof TypeVariable) {
-                    for (Type paramBound : ((TypeVariable<?>) param).getBounds()) {
-                        if (paramBound instanceof Class<?>) {
-                            final Class<T> cls = determineClass(bound, paramBound);
-                            if (cls != null) { return cls; }
-                        }
-                    }
-                }
-            }
-        }
-        return die("Cannot figure out type parameterization for " + klass.getName());
-    }
-
-    @SuppressWarnings("unchecked")
-    private static <T> Class<T> determineClass(Class<? super T> bound, Type candidate) {
-        if (candidate instanceof Class<?>) {
-            final Class<?> cls = (Class<?>) candidate;
-            if (bound.isAssignableFrom(cls)) {
-                return (Class<T>) cls;
-            }
-        }
-
-        return null;
+        return TypeParams.forClass(checkNotNull(klass)).getTypeParameter(bound);
     }
 
     public static void close(Object o) throws Exception {
@@ -0,0 +1,191 @@
+package org.cobbzilla.util.reflect;
+
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static org.cobbzilla.util.daemon.ZillaRuntime.die;
+
+/**
+ * The type parameters of one class's superclasses and interfaces, worked out once per class and kept.
+ * Backs the getTypeParam/getFirstTypeParam/getTypeParameter methods of ReflectionUtil.
+ *
+ * Type arguments are resolved to classes: type variables bound further down the hierarchy are replaced with
+ * what they were bound to, other type variables with their first bound, and parameterized types with their raw class.
+ * So for "class Foo extends MappyList&lt;String, Bar&gt;", the third type parameter of Mappy resolves to List.
+ */
+public class TypeParams {
+
+    private static final ClassValue<TypeParams> cache = new ClassValue<TypeParams>() {
+        @Override protected TypeParams computeValue(Class<?> type) { return new TypeParams(type); }
+    };
+
+    // stand-in for "no answer" in the lookup maps, which cannot hold null
+    private static final class None {}
+    private static final Class NONE = None.class;
+
+    public static TypeParams forClass(Class<?> clazz) { return cache.get(clazz); }
+
+    private final Class<?> clazz;
+
+    // the type arguments of the nearest parameterized superclass, as declared and as resolved. null if there is none
+    private final Type[] nearestArgs;
+    private final Class[] nearestClasses;
+
+    // every parameterized superclass, nearest first
+    private final List<ParameterizedType> parameterizedSuperclasses = new ArrayList<>();
+
+    // generic ancestor (superclass or interface, including clazz itself) -> its type arguments, resolved
+    private final Map<Class, Class[]> ancestors = new HashMap<>();
+
+    private final ConcurrentMap<Class, Class> byBound = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Class, Class> byImpl = new ConcurrentHashMap<>();
+
+    private TypeParams(Class<?> clazz) {
+        this.clazz = clazz;
+
+        for (Class check = clazz; check != null && !check.equals(Object.class); check = check.getSuperclass()) {
+            final Type superType = check.getGenericSuperclass();
+            if (superType instanceof ParameterizedType) parameterizedSuperclasses.add((ParameterizedType) superType);
+        }
+        if (parameterizedSuperclasses.isEmpty()) {
+            nearestArgs = null;
+            nearestClasses = null;
+        } else {
+            nearestArgs = parameterizedSuperclasses.get(0).getActualTypeArguments();
+            nearestClasses = erase(nearestArgs, Collections.<TypeVariable, Class>emptyMap());
+        }
+
+        ancestors.put(clazz, erase(clazz.getTypeParameters(), Collections.<TypeVariable, Class>emptyMap()));
+        addAncestors(clazz, Collections.<TypeVariable, Class>emptyMap());
+    }
+
+    private void addAncestors(Class<?> type, Map<TypeVariable, Class> bindings) {
+        final List<Type> supers = new ArrayList<>();
+        if (type.getGenericSuperclass() != null) supers.add(type.getGenericSuperclass());
+        supers.addAll(Arrays.asList(type.getGenericInterfaces()));
+
+        for (Type superType : supers) {
+            if (superType instanceof ParameterizedType) {
+                final ParameterizedType ptype = (ParameterizedType) superType;
+                final Class<?> raw = (Class<?>) ptype.getRawType();
+                if (ancestors.containsKey(raw)) continue;
+                final Class[] args = erase(ptype.getActualTypeArguments(), bindings);
+                ancestors.put(raw, args);
+
+                final TypeVariable[] vars = raw.getTypeParameters();
+                final Map<TypeVariable, Class> rawBindings = new HashMap<>();
+                for (int i=0; i<vars.length && i<args.length; i++) rawBindings.put(vars[i], args[i]);
+                addAncestors(raw, rawBindings);
+
+            } else if (superType instanceof Class && !ancestors.containsKey(superType)) {
+                final Class<?> raw = (Class<?>) superType;
+                ancestors.put(raw, erase(raw.getTypeParameters(), Collections.<TypeVariable, Class>emptyMap()));
+                addAncestors(raw, Collections.<TypeVariable, Class>emptyMap());
+            }
+        }
+    }
+
+    private static Class[] erase(Type[] types, Map<TypeVariable, Class> bindings) {
+        final Class[] classes = new Class[types.length];
+        for (int i=0; i<types.length; i++) classes[i] = erase(types[i], bindings);
+        return classes;
+    }
+
+    private static Class erase(Type type, Map<TypeVariable, Class> bindings) {
+        if (type instanceof Class) return (Class) type;
+        if (type instanceof ParameterizedType) return (Class) ((ParameterizedType) type).getRawType();
+        if (type instanceof TypeVariable) {
+            final Class bound = bindings.get(type);
+            return bound != null ? bound : erase(((TypeVariable) type).getBounds()[0], Collections.<TypeVariable, Class>emptyMap());
+        }
+        if (type instanceof WildcardType) return erase(((WildcardType) type).getUpperBounds()[0], bindings);
+        if (type instanceof GenericArrayType) {
+            return Array.newInstance(erase(((GenericArrayType) type).getGenericComponentType(), bindings), 0).getClass();
+        }
+        return Object.class;
+    }
+
+    /**
+     * @param index which type argument
+     * @return the index-th type argument of the nearest parameterized superclass
+     */
+    public Class getTypeParam(int index) {
+        if (nearestClasses == null) die("getTypeParam("+clazz.getName()+"): no type parameters found");
+        if (index >= nearestClasses.length) die("getTypeParam("+clazz.getName()+"): "+nearestClasses.length+" type parameters found, index "+index+" out of bounds");
+        return nearestClasses[index];
+    }
+
+    /**
+     * @param ancestor a generic superclass or interface of this class (or this class itself)
+     * @param index which type parameter of the ancestor
+     * @return what the ancestor's index-th type parameter is bound to, for this class
+     */
+    public Class getTypeParam(Class ancestor, int index) {
+        final Class[] args = ancestors.get(ancestor);
+        if (args == null) die("getTypeParam("+clazz.getName()+", "+ancestor.getName()+"): not a superclass or interface");
+        if (index >= args.length) die("getTypeParam("+clazz.getName()+", "+ancestor.getName()+"): "+args.length+" type parameters found, index "+index+" out of bounds");
+        return args[index];
+    }
+
+    /**
+     * @param impl the class to look for
+     * @return the first parameterized superclass that is an impl, or the first of its type arguments that is an impl.
+     * superclasses are checked nearest first. null if nothing matches
+     */
+    public Class getFirstTypeParam(Class impl) {
+        Class found = byImpl.get(impl);
+        if (found == null) {
+            found = NONE;
+            superclasses:
+            for (ParameterizedType ptype : parameterizedSuperclasses) {
+                final Class<?> rawType = (Class<?>) ptype.getRawType();
+                if (impl.isAssignableFrom(rawType)) {
+                    found = rawType;
+                    break;
+                }
+                for (Type t : ptype.getActualTypeArguments()) {
+                    if (t instanceof Class && impl.isAssignableFrom((Class<?>) t)) {
+                        found = (Class) t;
+                        break superclasses;
+                    }
+                }
+            }
+            byImpl.putIfAbsent(impl, found);
+        }
+        return found == NONE ? null : found;
+    }
+
+    /**
+     * @param bound the type bound
+     * @return the first type argument of the nearest parameterized superclass that is assignable to bound.
+     * type variables are matched by their bounds.
+     * @throws IllegalStateException if there is none
+     */
+    public Class getTypeParameter(Class bound) {
+        Class found = byBound.get(bound);
+        if (found == null) {
+            found = findTypeParameter(bound);
+            byBound.putIfAbsent(bound, found);
+        }
+        return found == NONE ? (Class) die("Cannot figure out type parameterization for " + clazz.getName()) : found;
+    }
+
+    private Class findTypeParameter(Class bound) {
+        if (nearestArgs == null) return NONE;
+        // should typically have one of type parameters (first one) that matches:
+        for (Type param : nearestArgs) {
+            if (param instanceof Class<?>) {
+                if (bound.isAssignableFrom((Class<?>) param)) return (Class) param;
+            }
+            else if (param instanceof TypeVariable) {
+                for (Type paramBound : ((TypeVariable<?>) param).getBounds()) {
+                    if (paramBound instanceof Class<?> && bound.isAssignableFrom((Class<?>) paramBound)) return (Class) paramBound;
+                }
+            }
+        }
+        return NONE;
+    }
+
+}
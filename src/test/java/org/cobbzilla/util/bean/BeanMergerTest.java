@@ -0,0 +1,157 @@
+package org.cobbzilla.util.bean;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BeanMergerTest {
+
+    @NoArgsConstructor
+    public static class Source {
+        @Getter @Setter private String name;
+        @Getter @Setter private Integer age;
+        @Getter @Setter private int count;
+        @Getter @Setter private boolean admin;
+        @Getter @Setter private String locked;
+        @Getter @Setter private String onlyInSource;
+        @Setter private String hidden; // write-only: nothing to read
+    }
+
+    @NoArgsConstructor
+    public static class Dest {
+        @Getter @Setter private String name;
+        @Getter @Setter private Integer age;
+        @Getter @Setter private int count;
+        @Getter @Setter private boolean admin;
+        @Getter private String locked = "dest"; // read-only: nothing to write
+        @Getter @Setter private String hidden;
+        @Getter @Setter private String onlyInDest;
+    }
+
+    @NoArgsConstructor
+    public static class StringAge {
+        @Getter @Setter private String age;
+    }
+
+    private static Source source () {
+        final Source s = new Source();
+        s.setName("Pat");
+        s.setAge(30);
+        s.setCount(7);
+        s.setAdmin(true);
+        s.setLocked("source");
+        s.setOnlyInSource("x");
+        s.setHidden("source");
+        return s;
+    }
+
+    private static Dest dest () {
+        final Dest d = new Dest();
+        d.setName("Sam");
+        d.setAge(40);
+        d.setCount(1);
+        d.setHidden("dest");
+        d.setOnlyInDest("y");
+        return d;
+    }
+
+    @Test public void testMergeProperties () throws Exception {
+        final Dest dest = dest();
+        BeanMerger.mergeProperties(dest, source());
+        assertEquals("Pat", dest.getName());
+        assertEquals(30, (int) dest.getAge());
+        assertEquals(7, dest.getCount());
+        assertTrue(dest.isAdmin());
+        assertEquals("dest", dest.getLocked());
+        assertEquals("dest", dest.getHidden());
+        assertEquals("y", dest.getOnlyInDest());
+
+        // nulls are copied too
+        final Dest again = dest();
+        final Source counted = new Source();
+        counted.setCount(3);
+        BeanMerger.mergeProperties(again, counted);
+        assertNull(again.getName());
+        assertNull(again.getAge());
+        assertEquals(3, again.getCount());
+        assertFalse(again.isAdmin());
+    }
+
+    @Test public void testMergeNotNullProperties () throws Exception {
+        final Dest dest = dest();
+        final Source aged = new Source();
+        aged.setAge(50);
+        BeanMerger.mergeNotNullProperties(dest, aged);
+        assertEquals("Sam", dest.getName());
+        assertEquals(50, (int) dest.getAge());
+        // primitives are never null, so they are always copied
+        assertEquals(0, dest.getCount());
+        assertFalse(dest.isAdmin());
+        assertEquals("dest", dest.getLocked());
+        assertEquals("dest", dest.getHidden());
+        assertEquals("y", dest.getOnlyInDest());
+    }
+
+    @Test public void testSameClass () throws Exception {
+        final Source dest = new Source();
+        dest.setName("Sam");
+        dest.setCount(1);
+        final Source orig = new Source();
+        orig.setAge(20);
+        orig.setAdmin(true);
+        BeanMerger.mergeNotNullProperties(dest, orig);
+        assertEquals("Sam", dest.getName());
+        assertEquals(20, (int) dest.getAge());
+        assertEquals(0, dest.getCount());
+        assertTrue(dest.isAdmin());
+
+        BeanMerger.mergeProperties(dest, source());
+        assertEquals("Pat", dest.getName());
+        assertEquals("source", dest.getLocked());
+    }
+
+    @Test public void testPlansAreKeptApart () throws Exception {
+        // the same classes with each evaluator, in both orders, use their own plans
+        for (int i=0; i<2; i++) {
+            final Dest notNull = dest();
+            BeanMerger.mergeNotNullProperties(notNull, new Source());
+            assertEquals("Sam", notNull.getName());
+
+            final Dest always = dest();
+            BeanMerger.mergeProperties(always, new Source());
+            assertNull(always.getName());
+        }
+    }
+
+    @Test public void testMismatchedType () throws Exception {
+        final Dest dest = dest();
+        try {
+            final StringAge orig = new StringAge();
+            orig.setAge("thirty");
+            BeanMerger.mergeProperties(dest, orig);
+            fail("expected an error copying a String into an Integer property");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage().startsWith("Error copying properties"));
+        }
+        assertEquals(40, (int) dest.getAge());
+
+        // a null goes into any object property
+        BeanMerger.mergeProperties(dest, new StringAge());
+        assertNull(dest.getAge());
+    }
+
+    @Test public void testNullBeans () throws Exception {
+        try {
+            BeanMerger.mergeProperties(null, source());
+            fail("expected an error for a null destination");
+        } catch (IllegalArgumentException expected) {}
+        try {
+            BeanMerger.mergeNotNullProperties(dest(), null);
+            fail("expected an error for a null origin");
+        } catch (IllegalArgumentException expected) {}
+    }
+
+}
@@ -0,0 +1,94 @@
+package org.cobbzilla.util.collection;
+
+import org.cobbzilla.util.daemon.ZillaRuntime;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FailedOperationCounterTest {
+
+    @After public void resetTime () { ZillaRuntime.setSystemTimeOffset(0); }
+
+    @Test public void testWindow () throws Exception {
+        final FailedOperationCounter<String> counter = new FailedOperationCounter<>(10000, 3);
+        counter.fail("user");
+        counter.fail("user");
+        assertFalse(counter.tooManyFailures("user"));
+        counter.fail("user"); // same millisecond failures all count
+        assertTrue(counter.tooManyFailures("user"));
+        assertFalse(counter.tooManyFailures("other"));
+
+        ZillaRuntime.setSystemTimeOffset(5000);
+        assertTrue(counter.tooManyFailures("user"));
+        assertEquals(0, counter.sweep());
+
+        ZillaRuntime.setSystemTimeOffset(10001);
+        assertFalse(counter.tooManyFailures("user"));
+        assertEquals(1, counter.sweep());
+        assertTrue(counter.isEmpty());
+    }
+
+    @Test public void testConcurrentFailures () throws Exception {
+        final int threads = 8;
+        final int failures = 10000;
+        final FailedOperationCounter<String> counter = new FailedOperationCounter<>(60000, threads * failures);
+        final List<Thread> running = new ArrayList<>();
+        for (int t=0; t<threads; t++) {
+            running.add(new Thread() {
+                @Override public void run() { for (int i=0; i<failures; i++) counter.fail("user"); }
+            });
+        }
+        for (Thread t : running) t.start();
+        for (Thread t : running) t.join();
+        assertTrue(counter.tooManyFailures("user"));
+        counter.fail("other");
+        assertFalse(counter.tooManyFailures("other"));
+    }
+
+    @Test public void testFailDuringSweep () throws Exception {
+        final FailedOperationCounter<String> counter = new FailedOperationCounter<String>(1000, 1) {
+            private boolean failed = false;
+            @Override public boolean remove(Object key, Object value) {
+                // a failure arrives after the sweeper found the window idle, but before it removes it
+                if (!failed) {
+                    failed = true;
+                    fail((String) key);
+                }
+                return super.remove(key, value);
+            }
+        };
+        counter.fail("user");
+        ZillaRuntime.setSystemTimeOffset(5000);
+        counter.sweep();
+        assertTrue(counter.tooManyFailures("user"));
+    }
+
+    @Test public void testConcurrentSweepAndFail () throws Exception {
+        final int keys = 20000;
+        for (int round=0; round<10; round++) {
+            ZillaRuntime.setSystemTimeOffset(0);
+            final FailedOperationCounter<Integer> counter = new FailedOperationCounter<>(1000, 1);
+            for (int i=0; i<keys; i++) counter.fail(i);
+            ZillaRuntime.setSystemTimeOffset(5000); // every window is now idle, and may be retired at any moment
+
+            final Thread failer = new Thread() {
+                @Override public void run() { for (int i=0; i<keys; i++) counter.fail(i); }
+            };
+            final Thread sweeper = new Thread() {
+                @Override public void run() { while (failer.isAlive()) counter.sweep(); }
+            };
+            sweeper.start();
+            failer.start();
+            failer.join();
+            sweeper.join();
+
+            // every key failed once since the windows went idle, and no sweep may lose that failure
+            for (int i=0; i<keys; i++) assertTrue("round "+round+", key "+i, counter.tooManyFailures(i));
+        }
+    }
+
+}
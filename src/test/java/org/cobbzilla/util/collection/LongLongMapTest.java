@@ -0,0 +1,86 @@
+package org.cobbzilla.util.collection;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class LongLongMapTest {
+
+    @Test public void testAgainstHashMap () throws Exception {
+        final Random random = new Random(42);
+        final LongLongMap map = new LongLongMap(4, -1);
+        final Map<Long, Long> expected = new HashMap<>();
+        for (int i=0; i<200000; i++) {
+            // a small key range, so there are plenty of collisions, updates and removes
+            final long key = random.nextInt(2000) - 100;
+            final long value = random.nextLong();
+            switch (random.nextInt(4)) {
+                case 0: case 1:
+                    final Long prev = expected.put(key, value);
+                    assertEquals(prev == null ? -1 : prev, map.put(key, value));
+                    break;
+                case 2:
+                    final Long removed = expected.remove(key);
+                    assertEquals(removed == null ? -1 : removed, map.remove(key));
+                    break;
+                default:
+                    final Long found = expected.get(key);
+                    assertEquals(found == null ? -1 : found, map.get(key));
+                    assertEquals(found != null, map.containsKey(key));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        final long[] keys = map.keys();
+        assertEquals(expected.size(), keys.length);
+        for (long key : keys) assertEquals(expected.get(key).longValue(), map.get(key));
+    }
+
+    @Test public void testAdd () throws Exception {
+        final LongLongMap counters = new LongLongMap();
+        for (long i=0; i<1000; i++) counters.add(i % 10, 1);
+        assertEquals(10, counters.size());
+        assertEquals(100, counters.get(0));
+        assertEquals(100, counters.get(7));
+        assertEquals(0, counters.get(11));
+        counters.clear();
+        assertTrue(counters.isEmpty());
+        assertEquals(0, counters.get(7));
+    }
+
+    @Test public void testLongMappy () throws Exception {
+        final LongMappy mappy = new LongMappy();
+        for (long i=0; i<1000; i++) mappy.add(i % 10, i);
+        assertEquals(10, mappy.size());
+        assertEquals(1000, mappy.totalSize());
+        assertEquals(100, mappy.count(3));
+        assertEquals(993, mappy.getLatest(3, -1));
+        assertEquals(-1, mappy.getLatest(11, -1));
+        assertTrue(mappy.contains(3, 503));
+        assertFalse(mappy.contains(3, 504));
+
+        long[] values = mappy.getAll(3);
+        assertEquals(3, values[0]);
+        assertEquals(13, values[1]);
+        assertEquals(993, values[99]);
+
+        // removing most keys compacts the values of the rest
+        for (long key=0; key<8; key++) assertEquals(100, mappy.remove(key));
+        assertEquals(0, mappy.remove(0));
+        assertEquals(200, mappy.totalSize());
+        mappy.add(9, 1000);
+        values = mappy.getAll(9);
+        assertEquals(101, values.length);
+        assertEquals(9, values[0]);
+        assertEquals(1000, values[100]);
+
+        final LongList list = new LongList();
+        list.add(-5);
+        assertEquals(100, mappy.getAll(8, list));
+        assertEquals(101, list.size());
+        assertEquals(-5, list.get(0));
+        assertEquals(8, list.get(1));
+    }
+
+}
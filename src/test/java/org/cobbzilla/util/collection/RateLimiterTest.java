@@ -0,0 +1,125 @@
+package org.cobbzilla.util.collection;
+
+import org.cobbzilla.util.daemon.ZillaRuntime;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RateLimiterTest {
+
+    @After public void resetTime () { ZillaRuntime.setSystemTimeOffset(0); }
+
+    @Test public void testTokenBucket () throws Exception {
+        final RateLimiter<String> limiter = new RateLimiter<>(3, 1, 1000);
+        assertEquals(3, limiter.getAvailable("user"));
+        assertTrue(limiter.tryAcquire("user"));
+        assertTrue(limiter.tryAcquire("user"));
+        assertTrue(limiter.tryAcquire("user"));
+        assertFalse(limiter.tryAcquire("user"));
+        assertEquals(0, limiter.getAvailable("user"));
+        assertTrue(limiter.tryAcquire("other"));
+        assertFalse(limiter.tryAcquire("other", 3));
+        assertTrue(limiter.tryAcquire("other", 2));
+
+        ZillaRuntime.setSystemTimeOffset(1000);
+        assertEquals(1, limiter.getAvailable("user"));
+        assertTrue(limiter.tryAcquire("user"));
+        assertFalse(limiter.tryAcquire("user"));
+        assertEquals(0, limiter.sweep());
+
+        ZillaRuntime.setSystemTimeOffset(4000);
+        assertEquals(3, limiter.getAvailable("user"));
+        assertEquals(2, limiter.sweep());
+        assertTrue(limiter.isEmpty());
+    }
+
+    @Test public void testAcquireDuringSweep () throws Exception {
+        final RateLimiter<String> limiter = new RateLimiter<String>(1, 1, 1000) {
+            private boolean acquired = false;
+            @Override public boolean remove(Object key, Object value) {
+                // a request arrives after the sweeper found the bucket full, but before it removes it
+                if (!acquired) {
+                    acquired = true;
+                    assertTrue(tryAcquire((String) key));
+                }
+                return super.remove(key, value);
+            }
+        };
+        assertTrue(limiter.tryAcquire("user"));
+        ZillaRuntime.setSystemTimeOffset(5000);
+        limiter.sweep();
+        assertFalse(limiter.tryAcquire("user"));
+    }
+
+    @Test public void testConcurrentSweepAndAcquire () throws Exception {
+        final int keys = 20000;
+        for (int round=0; round<10; round++) {
+            ZillaRuntime.setSystemTimeOffset(0);
+            final RateLimiter<Integer> limiter = new RateLimiter<>(1, 1, 1000);
+            for (int i=0; i<keys; i++) assertTrue(limiter.tryAcquire(i));
+            ZillaRuntime.setSystemTimeOffset(5000); // every bucket is now full, and may be retired at any moment
+
+            final Thread acquirer = new Thread() {
+                @Override public void run() { for (int i=0; i<keys; i++) assertTrue(limiter.tryAcquire(i)); }
+            };
+            final Thread sweeper = new Thread() {
+                @Override public void run() { while (acquirer.isAlive()) limiter.sweep(); }
+            };
+            sweeper.start();
+            acquirer.start();
+            acquirer.join();
+            sweeper.join();
+
+            // every key took its only token since the buckets refilled, and no sweep may hand it out again
+            for (int i=0; i<keys; i++) assertFalse("round "+round+", key "+i, limiter.tryAcquire(i));
+        }
+    }
+
+    @Test public void testConcurrentAcquire () throws Exception {
+        final int threads = 8;
+        final int burst = 1000;
+        final RateLimiter<String> limiter = new RateLimiter<String>(burst, 1, 1000000).startSweeper();
+        final AtomicInteger acquired = new AtomicInteger();
+        final List<Thread> running = new ArrayList<>();
+        for (int t=0; t<threads; t++) {
+            running.add(new Thread() {
+                @Override public void run() {
+                    for (int i=0; i<burst; i++) if (limiter.tryAcquire("user")) acquired.incrementAndGet();
+                }
+            });
+        }
+        try {
+            for (Thread t : running) t.start();
+            for (Thread t : running) t.join();
+        } finally {
+            limiter.stopSweeper();
+        }
+        assertEquals(burst, acquired.get());
+        assertEquals(0, limiter.getAvailable("user"));
+    }
+
+    @Test public void testInvalidArguments () throws Exception {
+        final RateLimiter<String> limiter = new RateLimiter<>();
+        assertDies(new Runnable() { @Override public void run() { limiter.tryAcquire("user", 0); } });
+        assertDies(new Runnable() { @Override public void run() { limiter.tryAcquire("user", -1); } });
+        assertDies(new Runnable() { @Override public void run() { limiter.setBurst(0); } });
+        assertDies(new Runnable() { @Override public void run() { limiter.setRefillTokens(0); } });
+        assertDies(new Runnable() { @Override public void run() { limiter.setRefillPeriod(-1); } });
+        assertDies(new Runnable() { @Override public void run() { new RateLimiter<String>(10, 0, 1000); } });
+        assertTrue(limiter.isEmpty());
+        assertTrue(limiter.tryAcquire("user", 10));
+    }
+
+    private static void assertDies (Runnable r) {
+        try {
+            r.run();
+            fail("expected an exception");
+        } catch (IllegalStateException expected) {}
+    }
+
+}
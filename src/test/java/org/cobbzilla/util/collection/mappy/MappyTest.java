@@ -0,0 +1,114 @@
+package org.cobbzilla.util.collection.mappy;
+
+import org.cobbzilla.util.daemon.ZillaRuntime;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MappyTest {
+
+    public static final int THREADS = 8;
+    public static final int PUTS = 10000;
+    public static final int KEYS = 10;
+
+    @Test public void testConcurrentPuts () throws Exception {
+        final MappyList<Integer, Integer> list = new MappyList<>();
+        final MappySet<Integer, Integer> set = new MappySet<>();
+        final MappyConcurrentSortedSet<Integer, Integer> sorted = new MappyConcurrentSortedSet<>();
+
+        final List<Thread> threads = new ArrayList<>();
+        for (int t=0; t<THREADS; t++) {
+            final int offset = t * PUTS;
+            threads.add(new Thread() {
+                @Override public void run() {
+                    for (int i=0; i<PUTS; i++) {
+                        list.put(i % KEYS, offset + i);
+                        set.put(i % KEYS, offset + i);
+                        sorted.put(i % KEYS, offset + i);
+                    }
+                }
+            });
+        }
+        for (Thread t : threads) t.start();
+        for (Thread t : threads) t.join();
+
+        assertEquals(KEYS, list.size());
+        assertEquals(THREADS * PUTS, list.totalSize());
+        assertEquals(THREADS * PUTS, set.totalSize());
+        assertEquals(THREADS * PUTS, sorted.totalSize());
+        assertEquals(THREADS * PUTS / KEYS, sorted.getAll(3).size());
+        assertEquals(3, (int) sorted.get(3));
+    }
+
+    @Test public void testPut () throws Exception {
+        final MappySet<String, String> mappy = new MappySet<>();
+        assertNull(mappy.put("a", "1"));
+        assertEquals("1", mappy.put("a", "1"));
+        assertNull(mappy.put("a", "2"));
+        assertEquals(2, mappy.getAll("a").size());
+
+        final MappyConcurrentSortedSet<String, String> sorted = new MappyConcurrentSortedSet<>();
+        assertNull(sorted.put("a", "2"));
+        assertEquals("2", sorted.put("a", "2"));
+        assertNull(sorted.put("a", "1"));
+        assertEquals("1", sorted.get("a"));
+    }
+
+    @Test public void testLookupsDoNotAddKeys () throws Exception {
+        final MappyList<String, String> mappy = new MappyList<>();
+        assertNull(mappy.get("missing"));
+        assertNull(mappy.getAllIfPresent("missing"));
+        assertFalse(mappy.containsKey("missing"));
+        assertTrue(mappy.getAll("missing").isEmpty());
+        assertTrue(mappy.containsKey("missing"));
+        assertTrue(mappy.isEmpty());
+    }
+
+    @Test public void testBoundedMappy () throws Exception {
+        final BoundedMappyList<String, Integer> cache = new BoundedMappyList<>(5, 2);
+        cache.put("a", 1);
+        cache.put("a", 2);
+        cache.put("a", 3);
+        assertEquals("[2, 3]", cache.getAll("a").toString());
+
+        cache.put("b", 1);
+        cache.put("b", 2);
+        assertEquals(1, cache.get("b").intValue()); // b is now more recently used than a
+        cache.put("c", 1);
+        assertEquals(5, cache.totalSize());
+        assertEquals(0, cache.getEvictions());
+        cache.put("c", 2);
+        assertEquals(1, cache.getEvictions());
+        assertEquals(4, cache.totalSize());
+        assertFalse(cache.containsKey("a"));
+        assertTrue(cache.containsKey("b"));
+
+        assertTrue(cache.getAll("missing").isEmpty());
+        assertFalse(cache.containsKey("missing"));
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        for (int i=0; i<1000; i++) cache.put("key"+i, i);
+        assertEquals(5, cache.totalSize());
+        assertEquals(5, cache.size());
+    }
+
+    @Test public void testBoundedMappyTtl () throws Exception {
+        final BoundedMappyList<String, Integer> cache = new BoundedMappyList<>(10, 10, 1000);
+        cache.put("a", 1);
+        try {
+            ZillaRuntime.setSystemTimeOffset(2000);
+            assertNull(cache.get("a"));
+            assertEquals(1, cache.getExpirations());
+            assertEquals(0, cache.totalSize());
+            cache.put("a", 2);
+            assertEquals(2, cache.get("a").intValue());
+        } finally {
+            ZillaRuntime.setSystemTimeOffset(0);
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+package org.cobbzilla.util.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.cobbzilla.util.json.JsonUtil.json;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JsonDiffTest {
+
+    public static final String FROM = "{\"name\": \"a\", \"gone\": 1, \"dotted.key\": 0, \"nested\": {\"x\": 1, \"y\": [1, 2, 3], \"z\": {\"deep\": true}},"
+            + " \"servers\": [{\"id\": \"s1\", \"port\": 80}, {\"id\": \"s2\", \"port\": 81}, {\"id\": \"s3\", \"port\": 82}],"
+            + " \"matrix\": [[1, 2], [3]], \"typeChange\": [1], \"things\": [{\"a\": 1}, {\"a\": 2}]}";
+
+    public static final String TO = "{\"name\": \"b\", \"dotted.key\": 0, \"dotted.new\": 2, \"nested\": {\"x\": 1, \"y\": [1, 2, 3, 4], \"z\": {\"deep\": false, \"n\": null}},"
+            + " \"servers\": [{\"id\": \"s1\", \"port\": 80}, {\"id\": \"s3\", \"port\": 8080}, {\"id\": \"s4\", \"port\": 83}],"
+            + " \"matrix\": [[1, 2], [3, 4]], \"typeChange\": {\"now\": \"object\"}, \"things\": [{\"a\": 1}]}";
+
+    @Test public void testDiffAppliesCleanly () throws Exception {
+        final JsonNode from = json(FROM, JsonNode.class);
+        final JsonNode to = json(TO, JsonNode.class);
+        final List<JsonEditOperation> ops = new JsonDiff().diff(from, to);
+        assertEquals(expected(to), apply(from, ops));
+
+        // keyed by id: s2 deleted, s3 patched in place, s4 appended -- nothing else in servers is touched
+        int serverOps = 0;
+        for (JsonEditOperation op : ops) if (op.getPath() != null && op.getPath().startsWith("servers")) serverOps++;
+        assertEquals(3, serverOps);
+
+        // nothing to do for identical documents
+        assertTrue(new JsonDiff().diff(from, from.deepCopy()).isEmpty());
+
+        // positional diff still produces the right document
+        assertEquals(expected(to), apply(from, new JsonDiff(null).diff(from, to)));
+        assertEquals(expected(from), apply(to, new JsonDiff().diff(to, from)));
+    }
+
+    @Test public void testJsonPatch () throws Exception {
+        final JsonNode from = json("{\"a\": 1, \"b\": {\"c\": 2}, \"list\": [{\"id\": 1}, {\"id\": 2, \"v\": 1}]}", JsonNode.class);
+        final JsonNode to = json("{\"a\": 2, \"b\": {}, \"list\": [{\"id\": 1}, {\"id\": 2, \"v\": 3}, {\"id\": 3}]}", JsonNode.class);
+        assertEquals("[{\"op\":\"add\",\"path\":\"/a\",\"value\":2},"
+                + "{\"op\":\"remove\",\"path\":\"/b/c\"},"
+                + "{\"op\":\"add\",\"path\":\"/list/1/v\",\"value\":3},"
+                + "{\"op\":\"add\",\"path\":\"/list/-\",\"value\":{\"id\":3}}]",
+                new JsonDiff().toJsonPatch(from, to).toString());
+
+        assertEquals("{\"a\":2,\"b\":{\"c\":null},\"list\":[{\"id\":1},{\"id\":2,\"v\":3},{\"id\":3}]}",
+                JsonDiff.toMergePatch(json("{\"a\": 1, \"b\": {\"c\": 2}, \"list\": [{\"id\": 1}]}", JsonNode.class),
+                                      json("{\"a\": 2, \"b\": {}, \"list\": [{\"id\": 1}, {\"id\": 2, \"v\": 3}, {\"id\": 3}]}", JsonNode.class)).toString());
+    }
+
+    // JsonEdit drops null fields from its output, and appends new fields at the end
+    private JsonNode expected(JsonNode node) throws Exception {
+        return json(JsonUtil.toString(JsonUtil.FULL_MAPPER.treeToValue(node, Object.class)), JsonNode.class);
+    }
+
+    private JsonNode apply(JsonNode from, List<JsonEditOperation> ops) throws Exception {
+        return json(new JsonEdit().setJsonData(from.deepCopy()).setOperations(ops).edit(), JsonNode.class);
+    }
+
+}
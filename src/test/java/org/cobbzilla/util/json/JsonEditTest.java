@@ -5,6 +5,8 @@ import org.cobbzilla.util.json.data.TestData;
 import org.cobbzilla.util.string.StringUtil;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Random;
@@ -13,6 +15,7 @@ import static org.apache.commons.lang3.RandomStringUtils.randomAlphabetic;
 import static org.apache.commons.lang3.RandomStringUtils.randomAlphanumeric;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class JsonEditTest {
 
@@ -153,6 +156,74 @@ public class JsonEditTest {
         assertNull(JsonUtil.fromJson(result, TestData.class).thing.field2);
     }
 
+    @Test public void testStreamingEditMatchesTreeEdit() throws Exception {
+        final String[][] edits = {
+                {"write", "thing.field2", "42"},
+                {"write", "thing.field1[2]", "\"replaced\""},
+                {"write", "thing.field2", "{\"subC\": \"c\", \"subB\": null, \"subfieldA\": [1, 2.5, null]}"},
+                {"write", "thing.field1", "\"appended\""},
+                {"write", "thing.field1[]", "{\"appended\": true}"},
+                {"write", "thing.newArray[]", "7"},
+                {"write", null, "{\"rootfoo\": \"bar\", \"id\": {\"nested\": 1}}"},
+                {"write", "newRootField.abc.def", "123456789012"},
+                {"write", "another_thing.'dotted.key'.x", "\"quoted\""},
+                {"delete", "thing.field2", null},
+                {"delete", "thing.field1[0]", null},
+                {"delete", "another_thing.fieldZ.nested", null},
+                {"read", "another_thing.fieldZ", null},
+                {"read", "thing.field1[1]", null},
+                {"read", "no.such.path", null},
+        };
+
+        // each edit by itself
+        for (String[] edit : edits) {
+            assertEquals("streaming edit differed for "+edit[0]+" "+edit[1],
+                    newEdit(false, edit).edit(), newEdit(true, edit).edit());
+        }
+
+        // all edits together, including overlapping paths and a read after writes
+        assertEquals(newEdit(false, edits).edit(), newEdit(true, edits).edit());
+        final String[][] writes = java.util.Arrays.copyOf(edits, edits.length-3);
+        assertEquals(newEdit(false, writes).edit(), newEdit(true, writes).edit());
+    }
+
+    @Test public void testSmileEdit() throws Exception {
+        final String[][] edits = {
+                {"write", "thing.field2", "{\"subC\": \"c\", \"subB\": null}"},
+                {"write", "thing.field1[]", "{\"appended\": true}"},
+                {"delete", "thing.field1[0]", null},
+                {"write", "thing.field2.subC", "\"overwritten\""},
+        };
+        final String expected = newEdit(false, edits).edit();
+        final byte[] smile = JsonUtil.jsonToSmile(StreamUtil.loadResourceAsString(TEST_JSON));
+        assertTrue(JsonUtil.isSmile(smile));
+
+        for (boolean streaming : new boolean[] {false, true}) {
+            // smile in, json out
+            assertEquals(expected, newEdit(streaming, edits).setJsonData(smile).edit());
+
+            // smile in, smile out
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertNull(newEdit(streaming, edits).setJsonData(new ByteArrayInputStream(smile)).setSmile(true).edit(out));
+            assertTrue(JsonUtil.isSmile(out.toByteArray()));
+            assertEquals(expected, JsonUtil.smileToJson(out.toByteArray()));
+        }
+        assertEquals("\"overwritten\"", newEdit(false, edits).setJsonData(smile).setSmile(true)
+                .addOperation(new JsonEditOperation().setType(JsonEditOperationType.read).setPath("thing.field2.subC"))
+                .edit(new ByteArrayOutputStream()));
+    }
+
+    private JsonEdit newEdit(boolean streaming, String[]... edits) throws IOException {
+        final JsonEdit jsonEdit = new JsonEdit().setJsonData(testJson()).setStreaming(streaming);
+        for (String[] edit : edits) {
+            jsonEdit.addOperation(new JsonEditOperation()
+                    .setType(JsonEditOperationType.valueOf(edit[0]))
+                    .setPath(edit[1])
+                    .setJson(edit[2]));
+        }
+        return jsonEdit;
+    }
+
     private InputStream testJson() throws IOException {
         return StreamUtil.loadResourceAsStream(TEST_JSON);
     }
@@ -1,6 +1,9 @@
 package org.cobbzilla.util.json;
 
+import com.fasterxml.jackson.annotation.JsonView;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.apache.commons.lang3.RandomStringUtils;
@@ -10,13 +13,14 @@ import org.cobbzilla.util.json.data.TestData;
 import org.cobbzilla.util.string.StringUtil;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 import static org.cobbzilla.util.json.JsonUtil.json;
 import static org.cobbzilla.util.json.JsonUtil.toJson;
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.*;
 
 public class JsonUtilTest {
 
@@ -58,6 +62,89 @@ public class JsonUtilTest {
         String getValue(TestData testData);
     }
 
+    @Test public void testJsonPath () throws Exception {
+        final JsonPath path = JsonPath.compile("thing.'dotted.name'.field1[2]");
+        assertSame(path, JsonPath.compile("thing.'dotted.name'.field1[2]"));
+        assertEquals(Arrays.asList("thing", "dotted.name", "field1[2]"), path.getTokens());
+        assertEquals("field1", path.getName(2));
+        assertEquals(2, path.getIndex(2));
+        assertEquals(-1, path.getIndex(0));
+        assertTrue(JsonPath.compile("thing.field1[]").isAppend(1));
+
+        final JsonNode doc = json(StreamUtil.loadResourceAsString(TEST_JSON), JsonNode.class);
+        assertEquals("item3", JsonUtil.findNode(doc, "thing.field1[2]").textValue());
+        assertEquals("blah", JsonUtil.findNode(doc, "another_thing.fieldZ.nested.deeper.quux").textValue());
+        assertNull(JsonUtil.findNode(doc, "thing.nope.field"));
+        assertNull(JsonUtil.findNode(doc, "thing.field1[]"));
+    }
+
+    @Test public void testProjectedRead () throws Exception {
+        final String json = StreamUtil.loadResourceAsString(TEST_JSON);
+        assertEquals("foo", JsonUtil.fromJson(json, "thing.field2", TestData.Field2.class).subfieldA);
+        assertEquals("item3", JsonUtil.fromJson(json, "thing.field1[2]", String.class));
+        assertEquals("blah", JsonUtil.fromJson(json, "another_thing.fieldZ", JsonNode.class).get("nested").get("deeper").get("quux").textValue());
+        assertNull(JsonUtil.fromJson(json, "thing.field1[3]", String.class));
+        assertNull(JsonUtil.fromJson(json, "thing.nothing.here", String.class));
+        assertNull(JsonUtil.fromJson(json, "id.field", String.class));
+    }
+
+    @Test public void testBytes () throws Exception {
+        final TestData data = JsonUtil.fromJson(StreamUtil.loadResourceAsString(TEST_JSON), TestData.class);
+        final byte[] bytes = JsonUtil.toJsonBytes(data);
+        assertEquals(toJson(data), new String(bytes, "UTF-8"));
+        assertEquals("baz", JsonUtil.fromJson(bytes, TestData.class).another_thing.field1);
+
+        final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        assertEquals("item2", JsonUtil.fromJson(direct, TestData.class).thing.field1[1]);
+        assertEquals(bytes.length, direct.remaining());
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonUtil.writeJson(data, out);
+        assertArrayEquals(bytes, out.toByteArray());
+    }
+
+    @Test public void testSmile () throws Exception {
+        final TestData data = JsonUtil.fromJson(StreamUtil.loadResourceAsString(TEST_JSON), TestData.class);
+        final byte[] smile = JsonUtil.toSmile(data);
+        assertTrue(JsonUtil.isSmile(smile));
+        assertFalse(JsonUtil.isSmile(JsonUtil.toJsonBytes(data)));
+        assertTrue(smile.length < JsonUtil.toJsonBytes(data).length);
+        assertEquals(toJson(data), toJson(JsonUtil.fromSmile(smile, TestData.class)));
+        assertEquals(toJson(data), JsonUtil.smileToJson(smile));
+        assertArrayEquals(smile, JsonUtil.jsonToSmile(toJson(data)));
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonUtil.writeSmile(data, out);
+        assertArrayEquals(smile, out.toByteArray());
+    }
+
+    public static class Viewed {
+        @JsonView(JsonUtil.PublicView.class) public String visible = "v";
+        public String hidden = "h";
+    }
+
+    @Test public void testViewWriters () throws Exception {
+        // a plain view writer for NOTNULL_MAPPER, made first, must not change what toJson(o, view) writes
+        final String plain = JsonUtil.writer(JsonUtil.NOTNULL_MAPPER, Viewed.class, JsonUtil.PublicView.class).writeValueAsString(new Viewed());
+        assertTrue(plain.contains("hidden"));
+
+        final String viewed = toJson(new Viewed(), JsonUtil.PublicView.class);
+        assertTrue(viewed.contains("visible"));
+        assertFalse(viewed.contains("hidden"));
+
+        assertTrue(JsonUtil.NOTNULL_MAPPER.isEnabled(MapperFeature.DEFAULT_VIEW_INCLUSION));
+    }
+
+    @Test public void testOnlyBuiltInMappersCached () throws Exception {
+        assertSame(JsonUtil.reader(JsonUtil.FULL_MAPPER, TestData.class), JsonUtil.reader(JsonUtil.FULL_MAPPER, TestData.class));
+        assertSame(JsonUtil.writer(JsonUtil.NOTNULL_MAPPER, TestData.class, null), JsonUtil.writer(JsonUtil.NOTNULL_MAPPER, TestData.class, null));
+
+        final ObjectMapper mapper = JsonUtil.buildMapper();
+        assertNotSame(JsonUtil.reader(mapper, TestData.class), JsonUtil.reader(mapper, TestData.class));
+        assertNotSame(JsonUtil.writer(mapper, TestData.class, null), JsonUtil.writer(mapper, TestData.class, null));
+    }
+
     @Test public void testMerge () throws Exception {
         final String orig = StreamUtil.stream2string(PREFIX + "/merge/test1_orig.json");
         final String request = StreamUtil.stream2string(PREFIX + "/merge/test1_request.json");
@@ -65,6 +152,28 @@ public class JsonUtilTest {
         assertTrue(jsonEquals(expected.replaceAll("\\s+", ""), JsonUtil.mergeJson(orig, request).replaceAll("\\s+", "")));
     }
 
+    @Test public void testKeyedMerge () throws Exception {
+        final ObjectNode target = json("{\"name\": \"a\", \"obj\": {\"x\": 1}, \"tags\": [1, 2],"
+                + " \"servers\": [{\"id\": \"s1\", \"port\": 80}, {\"id\": \"s2\", \"port\": 81}]}", ObjectNode.class);
+        final JsonNode update = json("{\"name\": \"a\", \"obj\": 5, \"tags\": [3], \"new.field\": {\"y\": true},"
+                + " \"servers\": [{\"id\": \"s2\", \"port\": 8081}, {\"id\": \"s3\", \"port\": 82}]}", JsonNode.class);
+
+        final List<String> changed = JsonUtil.mergeNodes(target, update, "id");
+        assertEquals(Arrays.asList("tags", "'new.field'", "servers[1].port", "servers[2]"), changed);
+        assertEquals(json("{\"name\": \"a\", \"obj\": {\"x\": 1}, \"tags\": [3], \"new.field\": {\"y\": true}, \"servers\": ["
+                + "{\"id\": \"s1\", \"port\": 80}, {\"id\": \"s2\", \"port\": 8081}, {\"id\": \"s3\", \"port\": 82}]}", JsonNode.class), target);
+
+        // subtrees from the update are used directly, not copied
+        assertSame(update.get("new.field"), target.get("new.field"));
+
+        // nothing changes the second time around
+        assertTrue(JsonUtil.mergeNodes(target, update, "id").isEmpty());
+
+        // without an id field, arrays are replaced
+        JsonUtil.mergeNodes(target, update);
+        assertEquals(update.get("servers"), target.get("servers"));
+    }
+
     private boolean jsonEquals(String j1, String j2) {
         if (j1 == null) return j2 == null;
         if (j2 == null) return false;
@@ -0,0 +1,54 @@
+package org.cobbzilla.util.json;
+
+import org.cobbzilla.util.json.data.TestData;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+public class NdJsonTest {
+
+    public static final int NUM_RECORDS = 5000;
+
+    @Test public void testWriteAndRead () throws Exception {
+
+        final List<TestData.Field2> records = new ArrayList<>();
+        for (int i=0; i<NUM_RECORDS; i++) {
+            final TestData.Field2 record = new TestData.Field2();
+            record.subfieldA = "record-"+i;
+            record.subB = i % 2 == 0 ? null : "line\nbreak-"+i;
+            records.add(record);
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (NdJsonWriter writer = new NdJsonWriter(out)) {
+            writer.writeAll(records);
+            assertEquals(NUM_RECORDS, writer.getCount());
+        }
+        final byte[] bytes = out.toByteArray();
+        assertEquals(NUM_RECORDS, new String(bytes, "UTF-8").split("\n").length);
+
+        try (NdJsonReader<TestData.Field2> reader = new NdJsonReader<>(new ByteArrayInputStream(bytes), TestData.Field2.class)) {
+            assertRecords(records, reader.toList());
+        }
+
+        try (NdJsonReader<TestData.Field2> reader = new NdJsonReader<>(new ByteArrayInputStream(bytes), TestData.Field2.class)
+                .parallel(new ForkJoinPool(4), 300)) {
+            assertRecords(records, reader.toList());
+        }
+    }
+
+    private void assertRecords(List<TestData.Field2> expected, List<TestData.Field2> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i=0; i<expected.size(); i++) {
+            assertEquals(expected.get(i).subfieldA, actual.get(i).subfieldA);
+            assertEquals(expected.get(i).subB, actual.get(i).subB);
+        }
+    }
+
+}
@@ -0,0 +1,247 @@
+package org.cobbzilla.util.json.main;
+
+import org.apache.commons.io.FileUtils;
+import org.cobbzilla.util.io.FileUtil;
+import org.cobbzilla.util.json.JsonEditOperationType;
+import org.cobbzilla.util.json.JsonUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.cobbzilla.util.io.FileUtil.abs;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class JsonEditorTest {
+
+    public static final String DOC = "{\"a\": {\"b\": 1, \"c\": [1, 2, 3]}, \"d\": \"x\"}";
+
+    private File dir;
+
+    @Before public void setup () throws Exception { dir = FileUtil.createTempDir("JsonEditorTest"); }
+
+    @After public void cleanup () throws Exception { FileUtils.deleteDirectory(dir); }
+
+    private JsonEditor streamingEditor (File in) {
+        final JsonEditor editor = new JsonEditor();
+        final JsonEditorOptions options = editor.getOptions();
+        options.setJsonFile(in);
+        options.setStreaming(true);
+        options.setOperationType(JsonEditOperationType.write);
+        options.setPath("a.b");
+        options.setValue("42");
+        return editor;
+    }
+
+    @Test public void testStreamingToOutfile () throws Exception {
+        final File in = new File(dir, "in.json");
+        FileUtil.toFile(in, DOC);
+        final File out = new File(dir, "out.json");
+
+        final JsonEditor editor = streamingEditor(in);
+        editor.getOptions().setOutfile(out);
+        assertEquals(0, editor.runSingle());
+
+        assertEquals(42, (int) JsonUtil.fromJson(FileUtil.toString(out), "a.b", Integer.class));
+        assertEquals("x", JsonUtil.fromJson(FileUtil.toString(out), "d", String.class));
+    }
+
+    @Test public void testStreamingToStdout () throws Exception {
+        final File in = new File(dir, "in.json");
+        FileUtil.toFile(in, DOC);
+
+        final PrintStream stdout = System.out;
+        final ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(captured));
+        try {
+            assertEquals(0, streamingEditor(in).runSingle());
+        } finally {
+            System.setOut(stdout);
+        }
+        assertEquals(42, (int) JsonUtil.fromJson(captured.toString("UTF-8"), "a.b", Integer.class));
+        assertEquals(3, (int) JsonUtil.fromJson(captured.toString("UTF-8"), "a.c[2]", Integer.class));
+    }
+
+    private JsonEditor batchEditor (String... files) {
+        final JsonEditor editor = new JsonEditor();
+        final JsonEditorOptions options = editor.getOptions();
+        options.setFiles(Arrays.asList(files));
+        options.setOperationType(JsonEditOperationType.write);
+        options.setPath("a.b");
+        options.setValue("42");
+        return editor;
+    }
+
+    // what runBatch returned, and what it printed
+    private static class BatchResult {
+        boolean ok;
+        String out;
+        String err;
+    }
+
+    private static BatchResult runBatch (JsonEditor editor) throws Exception {
+        final PrintStream stdout = System.out;
+        final PrintStream stderr = System.err;
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        final BatchResult result = new BatchResult();
+        System.setOut(new PrintStream(out));
+        System.setErr(new PrintStream(err));
+        try {
+            result.ok = editor.runBatch();
+        } finally {
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+        result.out = out.toString("UTF-8");
+        result.err = err.toString("UTF-8");
+        return result;
+    }
+
+    private File json (String path) throws Exception { return file(path, DOC); }
+
+    private File file (String path, String data) throws Exception {
+        final File f = new File(dir, path);
+        FileUtil.mkdirOrDie(f.getParentFile());
+        return FileUtil.toFile(f, data);
+    }
+
+    private static int ab (File f) throws Exception { return JsonUtil.fromJson(FileUtil.toString(f), "a.b", Integer.class); }
+
+    @Test public void testGlob () throws Exception {
+        final File x = json("conf/x.json");
+        final File y = json("conf/sub/y.json");
+        final File z = json("conf/z.txt");
+        final String conf = abs(dir) + "/conf";
+
+        assertEquals(Collections.singletonList(x), FileUtil.glob(conf + "/*.json"));
+        assertEquals(Collections.singletonList(y), FileUtil.glob(conf + "/**/*.json"));
+        assertEquals(Arrays.asList(y, x), FileUtil.glob(conf + "/**.json"));
+        assertEquals(Arrays.asList(x, z), FileUtil.glob(conf + "/{x,z}.*"));
+        assertEquals(Collections.emptyList(), FileUtil.glob(conf + "/missing/*.json"));
+        // no wildcards: returned as-is, whether it exists or not
+        assertEquals(Collections.singletonList(new File(conf + "/none.json")), FileUtil.glob(conf + "/none.json"));
+
+        final BatchResult result = runBatch(batchEditor(conf + "/**.json"));
+        assertTrue(result.err, result.ok);
+        assertEquals(42, ab(x));
+        assertEquals(42, ab(y));
+        assertEquals(1, ab(z));
+        assertEquals(abs(y) + "\n" + abs(x) + "\n", result.out.replace("\r", ""));
+    }
+
+    @Test public void testNoFilesMatched () throws Exception {
+        final BatchResult result = runBatch(batchEditor(abs(dir) + "/*.json"));
+        assertFalse(result.ok);
+        assertTrue(result.err, result.err.startsWith("No files matched"));
+    }
+
+    @Test public void testScript () throws Exception {
+        final File f = json("doc.json");
+        final File script = FileUtil.toFile(new File(dir, "script.json"), "["
+                + "{\"type\": \"write\", \"path\": \"a.b\", \"json\": {\"e\": 1}},"
+                + "{\"type\": \"WRITE\", \"path\": \"f\", \"json\": \"[1, 2]\"},"
+                + "{\"type\": \"delete\", \"path\": \"d\"}"
+                + "]");
+        final JsonEditor editor = batchEditor(abs(f));
+        editor.getOptions().setScript(script);
+        assertEquals(3, editor.getOptions().getOperations().size());
+
+        assertTrue(runBatch(editor).ok);
+        final String edited = FileUtil.toString(f);
+        assertEquals(1, (int) JsonUtil.fromJson(edited, "a.b.e", Integer.class));
+        assertEquals(2, (int) JsonUtil.fromJson(edited, "f[1]", Integer.class));
+        assertNull(JsonUtil.fromJson(edited, "d", String.class));
+        assertEquals(3, (int) JsonUtil.fromJson(edited, "a.c[2]", Integer.class));
+    }
+
+    @Test public void testBadScripts () throws Exception {
+        assertBadScript("{\"type\": \"write\"}", "not a JSON array");
+        assertBadScript("[{\"path\": \"a\"}]", "no type");
+        assertBadScript("[{\"type\": 3, \"path\": \"a\"}]", "no type");
+    }
+
+    private void assertBadScript (String script, String error) throws Exception {
+        final JsonEditorOptions options = new JsonEditorOptions();
+        options.setScript(FileUtil.toFile(new File(dir, "bad-script.json"), script));
+        try {
+            options.getOperations();
+            fail("expected an error for script: "+script);
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains(error));
+        }
+    }
+
+    @Test public void testAtomicWriteKeepsPermissions () throws Exception {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        final File f = json("conf/doc.json");
+        final Set<PosixFilePermission> perms = PosixFilePermissions.fromString("rw-r-----");
+        Files.setPosixFilePermissions(f.toPath(), perms);
+
+        assertTrue(runBatch(batchEditor(abs(f))).ok);
+        assertEquals(42, ab(f));
+        assertEquals(perms, Files.getPosixFilePermissions(f.toPath()));
+        // the temp file was renamed into place, and nothing else was left behind
+        assertEquals(Collections.singletonList(f.getName()), Arrays.asList(f.getParentFile().list()));
+    }
+
+    @Test public void testSummary () throws Exception {
+        final File one = json("one.json");
+        final File two = json("two.json");
+        final File three = json("three.json");
+
+        BatchResult result = runBatch(batchEditor(abs(one), abs(two)));
+        assertTrue(result.ok);
+        assertTrue(result.err, result.err.contains("2 files, 2 changed, 0 failed"));
+
+        // one and two already have the new value, so only three changes, and is the only file printed
+        final long modified = one.lastModified();
+        result = runBatch(batchEditor(abs(dir) + "/*.json"));
+        assertTrue(result.ok);
+        assertTrue(result.err, result.err.contains("3 files, 1 changed, 0 failed"));
+        assertEquals(abs(three), result.out.trim());
+        assertEquals(modified, one.lastModified());
+
+        // a read prints each file and its value, and changes nothing
+        final JsonEditor reader = batchEditor(abs(one), abs(three));
+        reader.getOptions().setOperationType(JsonEditOperationType.read);
+        result = runBatch(reader);
+        assertTrue(result.ok);
+        assertEquals(abs(one) + ": 42\n" + abs(three) + ": 42\n", result.out.replace("\r", ""));
+        assertTrue(result.err, result.err.contains("2 files, 0 changed, 0 failed"));
+    }
+
+    @Test public void testFailingFileWithThreads () throws Exception {
+        final int count = 20;
+        final List<File> good = new ArrayList<>();
+        for (int i=0; i<count; i++) good.add(json("many/good-" + i + ".json"));
+        final File bad = file("many/bad.json", "{\"a\": ");
+
+        final JsonEditor editor = batchEditor(abs(dir) + "/many/*.json");
+        editor.getOptions().setThreads(4);
+        final BatchResult result = runBatch(editor);
+
+        assertFalse(result.ok);
+        assertTrue(result.err, result.err.contains(abs(bad) + ": "));
+        assertTrue(result.err, result.err.contains((count+1)+" files, "+count+" changed, 1 failed"));
+        for (File f : good) assertEquals(abs(f), 42, ab(f));
+        assertEquals("{\"a\": ", FileUtil.toString(bad));
+        assertFalse(result.out.contains(abs(bad)));
+        // no temp files left behind by the failed edit
+        assertEquals(count + 1, bad.getParentFile().list().length);
+    }
+
+}
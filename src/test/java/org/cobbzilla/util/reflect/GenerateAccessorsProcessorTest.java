@@ -0,0 +1,246 @@
+package org.cobbzilla.util.reflect;
+
+import org.apache.commons.io.FileUtils;
+import org.cobbzilla.util.io.FileUtil;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.*;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeNotNull;
+
+/**
+ * Compiles the fixture beans twice, with and without GenerateAccessorsProcessor, and checks that ReflectionUtil
+ * gives the same results for both: the first set of classes goes through the generated companions, the second
+ * through reflection.
+ */
+public class GenerateAccessorsProcessorTest {
+
+    public static final String PKG = "org.cobbzilla.util.reflect.fixture";
+
+    public static final String LOMBOK_BEAN = "package "+PKG+";\n"
+            + "import lombok.*;\n"
+            + "@org.cobbzilla.util.reflect.GenerateAccessors @NoArgsConstructor\n"
+            + "public class LombokBean {\n"
+            + "    @Getter @Setter private String name;\n"
+            + "    @Getter @Setter private Integer age;\n"
+            + "    @Getter @Setter private java.util.List<String> tags;\n"
+            + "    @Getter @Setter private String[] aliases;\n"
+            + "    @Getter @Setter private boolean admin;\n"
+            + "    @Getter private String readOnly = \"fixed\";\n"
+            + "    @Setter private String writeOnly;\n"
+            + "    @Getter(onMethod=@__(@java.beans.Transient)) @Setter private String secret;\n"
+            + "}\n";
+
+    public static final String PRIMITIVES = "package "+PKG+";\n"
+            + "@org.cobbzilla.util.reflect.GenerateAccessors\n"
+            + "public class Primitives {\n"
+            + "    private int count; private long total; private double ratio; private char grade; private short level;\n"
+            + "    private String fussy;\n"
+            + "    public int getCount() { return count; }\n"
+            + "    public void setCount(int count) { this.count = count; }\n"
+            + "    public long getTotal() { return total; }\n"
+            + "    public void setTotal(long total) { this.total = total; }\n"
+            + "    public double getRatio() { return ratio; }\n"
+            + "    public void setRatio(double ratio) { this.ratio = ratio; }\n"
+            + "    public char getGrade() { return grade; }\n"
+            + "    public void setGrade(char grade) { this.grade = grade; }\n"
+            + "    public short getLevel() { return level; }\n"
+            + "    public void setLevel(short level) { this.level = level; }\n"
+            // a getter that fails until its value is set, which copy must skip on the destination
+            + "    public String getFussy() { if (fussy == null) throw new IllegalStateException(\"fussy not set\"); return fussy; }\n"
+            + "    public void setFussy(String fussy) { this.fussy = fussy; }\n"
+            + "    public void setBroken(String broken) { throw new IllegalStateException(broken); }\n"
+            + "    public void setFatal(String fatal) { throw new AssertionError(fatal); }\n"
+            + "}\n";
+
+    public static final String NESTED = "package "+PKG+";\n"
+            + "public class Outer {\n"
+            + "    @org.cobbzilla.util.reflect.GenerateAccessors\n"
+            + "    public static class Inner {\n"
+            + "        private String value;\n"
+            + "        public String getValue() { return value; }\n"
+            + "        public void setValue(String value) { this.value = value; }\n"
+            + "    }\n"
+            + "}\n";
+
+    public static final String GENERIC = "package "+PKG+";\n"
+            + "@org.cobbzilla.util.reflect.GenerateAccessors\n"
+            + "public class Holder<T extends Comparable<T>> {\n"
+            + "    private T value; private java.util.List<T> values;\n"
+            + "    public T getValue() { return value; }\n"
+            + "    public void setValue(T value) { this.value = value; }\n"
+            + "    public java.util.List<T> getValues() { return values; }\n"
+            + "    public void setValues(java.util.List<T> values) { this.values = values; }\n"
+            + "}\n";
+
+    private static File dir;
+    private static ClassLoader generated;
+    private static ClassLoader reflected;
+
+    @BeforeClass public static void compileFixtures () throws Exception {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assumeNotNull(compiler); // running on a JRE
+
+        dir = FileUtil.createTempDir("GenerateAccessorsProcessorTest");
+        final File src = new File(dir, "src/" + PKG.replace('.', '/'));
+        if (!src.mkdirs()) fail("error creating " + src);
+        FileUtil.toFile(new File(src, "LombokBean.java"), LOMBOK_BEAN);
+        FileUtil.toFile(new File(src, "Primitives.java"), PRIMITIVES);
+        FileUtil.toFile(new File(src, "Outer.java"), NESTED);
+        FileUtil.toFile(new File(src, "Holder.java"), GENERIC);
+
+        generated = compile(compiler, src, new File(dir, "generated"), true);
+        reflected = compile(compiler, src, new File(dir, "reflected"), false);
+    }
+
+    @AfterClass public static void cleanup () throws Exception { if (dir != null) FileUtils.deleteDirectory(dir); }
+
+    private static ClassLoader compile(JavaCompiler compiler, File src, File out, boolean companions) throws Exception {
+        if (!out.mkdirs()) fail("error creating " + out);
+        final String classpath = classpathOf(GenerateAccessors.class, lombok.Getter.class, org.slf4j.Logger.class);
+        final String processors = "lombok.launch.AnnotationProcessorHider$AnnotationProcessor"
+                + (companions ? "," + GenerateAccessorsProcessor.class.getName() : "");
+        final List<String> args = new ArrayList<>(Arrays.asList(
+                "-nowarn", "-d", out.getAbsolutePath(), "-cp", classpath, "-processorpath", classpath, "-processor", processors));
+        for (File f : src.listFiles()) args.add(f.getAbsolutePath());
+
+        final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        final int result = compiler.run(null, null, errors, args.toArray(new String[args.size()]));
+        assertEquals("compiling fixtures failed: " + errors.toString("UTF-8"), 0, result);
+        return new URLClassLoader(new URL[] {out.toURI().toURL()}, GenerateAccessorsProcessorTest.class.getClassLoader());
+    }
+
+    private static String classpathOf(Class<?>... classes) throws Exception {
+        final StringBuilder b = new StringBuilder();
+        for (Class<?> c : classes) {
+            if (b.length() > 0) b.append(File.pathSeparator);
+            b.append(new File(c.getProtectionDomain().getCodeSource().getLocation().toURI()).getAbsolutePath());
+        }
+        return b.toString();
+    }
+
+    private static Object newBean(ClassLoader loader, String name) throws Exception {
+        return loader.loadClass(PKG + "." + name).newInstance();
+    }
+
+    // a bean of the given class from each loader, with the same properties set on both
+    private static Object[] beans(String name, Map<String, Object> properties) throws Exception {
+        final Object[] beans = {newBean(generated, name), newBean(reflected, name)};
+        for (Object bean : beans) {
+            for (Map.Entry<String, Object> p : properties.entrySet()) ReflectionUtil.set(bean, p.getKey(), p.getValue());
+        }
+        return beans;
+    }
+
+    private static void assertSameResults(String name, Map<String, Object> properties) throws Exception {
+        final Object[] src = beans(name, properties);
+        assertNotNull(name, BeanCompanion.forClass(src[0].getClass()));
+        assertNull(name, BeanCompanion.forClass(src[1].getClass()));
+
+        for (String property : properties.keySet()) {
+            final Object value = ReflectionUtil.get(src[0], property);
+            assertEquals(name+"."+property, properties.get(property), value);
+            assertEquals(name+"."+property, ReflectionUtil.get(src[1], property), value);
+        }
+        final Map<String, Object> map = ReflectionUtil.toMap(src[0]);
+        assertEquals(name, ReflectionUtil.toMap(src[1]), map);
+
+        final Object[] dest = beans(name, Collections.<String, Object>emptyMap());
+        final int copied = ReflectionUtil.copy(dest[0], src[0]);
+        assertEquals(name, ReflectionUtil.copy(dest[1], src[1]), copied);
+        assertEquals(name, map, ReflectionUtil.toMap(dest[0]));
+        assertEquals(name, map, ReflectionUtil.toMap(dest[1]));
+
+        // nothing left to copy the second time
+        assertEquals(name, 0, ReflectionUtil.copy(dest[0], src[0]));
+        assertEquals(name, 0, ReflectionUtil.copy(dest[1], src[1]));
+    }
+
+    private static Map<String, Object> properties(Object... nameValues) {
+        final Map<String, Object> map = new LinkedHashMap<>();
+        for (int i=0; i<nameValues.length; i+=2) map.put((String) nameValues[i], nameValues[i+1]);
+        return map;
+    }
+
+    @Test public void testLombokBean () throws Exception {
+        assertSameResults("LombokBean", properties(
+                "name", "Pat", "age", 30, "tags", Arrays.asList("a", "b"), "admin", true, "secret", "hush"));
+
+        final Object[] beans = beans("LombokBean", properties("name", "Pat"));
+        for (Object bean : beans) {
+            assertFalse(ReflectionUtil.toMap(bean).containsKey("secret"));
+            assertEquals("fixed", ReflectionUtil.toMap(bean).get("readOnly"));
+        }
+    }
+
+    @Test public void testPrimitives () throws Exception {
+        assertSameResults("Primitives", properties(
+                "count", 3, "total", 4L, "ratio", 0.5d, "grade", 'B', "level", (short) 2, "fussy", "yes"));
+    }
+
+    @Test public void testNested () throws Exception {
+        assertSameResults("Outer$Inner", properties("value", "inside"));
+        assertNull(BeanCompanion.forClass(generated.loadClass(PKG + ".Outer")));
+    }
+
+    @Test public void testGeneric () throws Exception {
+        assertSameResults("Holder", properties("value", "x", "values", Arrays.asList("y", "z")));
+    }
+
+    @Test public void testAccessorErrors () throws Exception {
+        for (ClassLoader loader : new ClassLoader[] {generated, reflected}) {
+            final Class<?> type = loader.loadClass(PKG + ".Primitives");
+            final String msg = BeanCompanion.forClass(type) == null ? "reflection" : "companion";
+            final AccessorRegistry registry = AccessorRegistry.forClass(type);
+            final Object bean = type.newInstance();
+
+            final PropertyAccessor setTotal = registry.accessor(type.getMethod("setTotal", long.class));
+            assertEquals(msg, msg.equals("companion"), setTotal.getMethod() == null);
+            setTotal.set(bean, 6); // widened, like Method.invoke
+            assertEquals(msg, 6L, registry.accessor(type.getMethod("getTotal")).get(bean));
+            assertThrows(msg, IllegalArgumentException.class, setTotal, bean, null);
+            assertThrows(msg, IllegalArgumentException.class, setTotal, bean, "not a number");
+            assertThrows(msg, IllegalArgumentException.class, setTotal, "not a bean", 1L);
+            assertThrows(msg, NullPointerException.class, setTotal, null, 1L);
+
+            try {
+                registry.accessor(type.getMethod("getFussy")).get(bean);
+                fail(msg+": expected InvocationTargetException");
+            } catch (InvocationTargetException e) {
+                assertTrue(msg, e.getCause() instanceof IllegalStateException);
+            }
+            try {
+                registry.accessor(type.getMethod("setBroken", String.class)).set(bean, "oops");
+                fail(msg+": expected InvocationTargetException");
+            } catch (InvocationTargetException e) {
+                assertTrue(msg, e.getCause() instanceof IllegalStateException);
+            }
+            try {
+                registry.accessor(type.getMethod("setFatal", String.class)).set(bean, "oops");
+                fail(msg+": expected AssertionError");
+            } catch (AssertionError e) {
+                assertEquals(msg, "oops", e.getMessage());
+            }
+        }
+    }
+
+    private static void assertThrows(String msg, Class<? extends Exception> expected, PropertyAccessor setter, Object target, Object value) {
+        try {
+            setter.set(target, value);
+            fail(msg+": expected "+expected.getSimpleName());
+        } catch (Exception e) {
+            assertTrue(msg+": expected "+expected.getSimpleName()+" but was "+e, expected.isInstance(e));
+        }
+    }
+
+}
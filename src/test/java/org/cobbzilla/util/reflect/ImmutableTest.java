@@ -0,0 +1,91 @@
+package org.cobbzilla.util.reflect;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ImmutableTest {
+
+    public interface Named {
+        String getName();
+        boolean isActive();
+        int count();
+        void reset();
+    }
+
+    public interface Tagged { List<String> getTags(); }
+
+    @AllArgsConstructor
+    public static class Thing implements Named, Tagged {
+        @Getter private String name;
+        @Getter private boolean active;
+        @Getter private final List<String> tags = new ArrayList<>();
+        @Override public int count() { return tags.size(); }
+        @Override public void reset() { name = null; }
+    }
+
+    // wrapped through a registered view in testRegisteredView, and nowhere else
+    @AllArgsConstructor
+    public static class ViewedThing implements Named {
+        @Getter private String name;
+        @Override public boolean isActive() { return true; }
+        @Override public int count() { return 0; }
+        @Override public void reset() { name = null; }
+    }
+
+    @AllArgsConstructor
+    public static class ViewedThingView implements Named {
+        private final ViewedThing thing;
+        @Override public String getName() { return thing.getName(); }
+        @Override public boolean isActive() { return thing.isActive(); }
+        @Override public int count() { return thing.count(); }
+        @Override public void reset() { throw new UnsupportedOperationException("reset"); }
+    }
+
+    @Test public void testGettersAllowed () throws Exception {
+        final Thing thing = new Thing("Pat", true);
+        thing.getTags().add("a");
+        for (int i=0; i<2; i++) {
+            final Named named = Immutable.wrap((Named) thing);
+            assertTrue(named instanceof Tagged);
+            assertFalse(named instanceof Thing);
+            assertEquals("Pat", named.getName());
+            assertTrue(named.isActive());
+            assertEquals(1, ((Tagged) named).getTags().size());
+        }
+    }
+
+    @Test public void testNonGettersDie () throws Exception {
+        final Thing thing = new Thing("Pat", true);
+        final Named named = Immutable.wrap((Named) thing);
+        try {
+            named.count();
+            fail("expected count() to die");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage().contains("count"));
+        }
+        try {
+            named.reset();
+            fail("expected reset() to die");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage().contains("reset"));
+        }
+        assertEquals("Pat", thing.getName());
+    }
+
+    @Test public void testRegisteredView () throws Exception {
+        Immutable.registerView(ViewedThing.class, ViewedThingView.class);
+        final Named named = Immutable.wrap((Named) new ViewedThing("Sam"));
+        assertTrue(named instanceof ViewedThingView);
+        assertEquals("Sam", named.getName());
+
+        // other classes still get proxies
+        assertFalse(Immutable.wrap((Named) new Thing("Pat", false)) instanceof ViewedThingView);
+    }
+
+}
@@ -0,0 +1,28 @@
+package org.cobbzilla.util.reflect;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PoisonProxyTest {
+
+    public interface Service { String call(); }
+
+    @Test public void testPoisoned () throws Exception {
+        final Service service = PoisonProxy.wrap(Service.class);
+        try {
+            service.call();
+            fail("expected call() to fail");
+        } catch (UnsupportedOperationException expected) {
+            assertTrue(expected.getMessage().contains("call"));
+        }
+    }
+
+    @Test public void testCached () throws Exception {
+        assertSame(PoisonProxy.wrap(Service.class), PoisonProxy.wrap(Service.class));
+        assertNotSame((Object) PoisonProxy.wrap(Service.class), PoisonProxy.wrap(List.class));
+    }
+
+}
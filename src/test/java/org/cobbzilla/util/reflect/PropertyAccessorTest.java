@@ -0,0 +1,93 @@
+package org.cobbzilla.util.reflect;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+public class PropertyAccessorTest {
+
+    public static class Bean {
+        @Getter @Setter private long count;
+        @Getter @Setter private String name;
+        public void setFail(String message) { throw new IllegalStateException(message); }
+        public void setError(String message) { throw new AssertionError(message); }
+    }
+
+    static class HiddenBean {
+        @Getter @Setter private String name;
+    }
+
+    private static PropertyAccessor accessor(Class<?> type, String name, boolean useMethodHandle, Class<?>... params) throws Exception {
+        final Method method = type.getMethod(name, params);
+        return PropertyAccessor.forMethod(method, useMethodHandle);
+    }
+
+    @Test public void testBothBackends () throws Exception {
+        for (boolean handles : new boolean[] {false, true}) {
+            final String msg = "methodHandles="+handles;
+            final Bean bean = new Bean();
+
+            final PropertyAccessor setCount = accessor(Bean.class, "setCount", handles, long.class);
+            assertEquals(msg, handles, setCount.isMethodHandle());
+            setCount.set(bean, 5L);
+            setCount.set(bean, 6); // widened, like Method.invoke
+            assertEquals(msg, 6L, accessor(Bean.class, "getCount", handles).get(bean));
+
+            accessor(Bean.class, "setName", handles, String.class).set(bean, null);
+            assertNull(msg, accessor(Bean.class, "getName", handles).get(bean));
+
+            assertThrows(msg, IllegalArgumentException.class, setCount, bean, null);
+            assertThrows(msg, IllegalArgumentException.class, setCount, bean, "not a number");
+            assertThrows(msg, IllegalArgumentException.class, setCount, "not a bean", 1L);
+            assertThrows(msg, NullPointerException.class, setCount, null, 1L);
+
+            try {
+                accessor(Bean.class, "setFail", handles, String.class).set(bean, "oops");
+                fail(msg+": expected InvocationTargetException");
+            } catch (InvocationTargetException e) {
+                assertTrue(msg, e.getCause() instanceof IllegalStateException);
+            }
+            try {
+                accessor(Bean.class, "setError", handles, String.class).set(bean, "oops");
+                fail(msg+": expected AssertionError");
+            } catch (AssertionError e) {
+                assertEquals(msg, "oops", e.getMessage());
+            }
+        }
+    }
+
+    private void assertThrows(String msg, Class<? extends Exception> expected, PropertyAccessor setter, Object target, Object value) {
+        try {
+            setter.set(target, value);
+            fail(msg+": expected "+expected.getSimpleName()+" setting "+value+" on "+target);
+        } catch (Exception e) {
+            assertTrue(msg+": expected "+expected.getSimpleName()+" but was "+e, expected.isInstance(e));
+        }
+    }
+
+    @Test public void testFallbackForHiddenClass () throws Exception {
+        // the public lookup cannot see a package-private class, so this falls back to reflection
+        final PropertyAccessor setter = accessor(HiddenBean.class, "setName", true, String.class);
+        assertFalse(setter.isMethodHandle());
+        final HiddenBean bean = new HiddenBean();
+        setter.set(bean, "x");
+        assertEquals("x", accessor(HiddenBean.class, "getName", true).get(bean));
+    }
+
+    @Test public void testSwitch () throws Exception {
+        assertEquals(PropertyAccessor.useMethodHandles(System.getProperties()), PropertyAccessor.USE_METHOD_HANDLES);
+        final Properties props = new Properties();
+        assertFalse(PropertyAccessor.useMethodHandles(props));
+        props.setProperty(PropertyAccessor.PROP_METHOD_HANDLES, "true");
+        assertTrue(PropertyAccessor.useMethodHandles(props));
+        props.setProperty(PropertyAccessor.PROP_NO_METHOD_HANDLES, "true");
+        assertFalse(PropertyAccessor.useMethodHandles(props));
+    }
+
+}
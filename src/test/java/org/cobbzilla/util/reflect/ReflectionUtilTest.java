@@ -3,10 +3,19 @@ package org.cobbzilla.util.reflect;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.Setter;
+import org.cobbzilla.util.collection.mappy.Mappy;
+import org.cobbzilla.util.collection.mappy.MappyList;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
 import static junit.framework.Assert.fail;
 import static org.cobbzilla.util.daemon.ZillaRuntime.die;
 import static org.cobbzilla.util.daemon.ZillaRuntime.now;
@@ -27,6 +36,18 @@ public class ReflectionUtilTest {
         }
     }
 
+    public static class Copyable {
+        @Getter private final String value;
+        public Copyable (String value) { this.value = value; }
+        public Copyable (Copyable other) { this.value = other.value + "-copy"; }
+        public Copyable (CharSequence value, Long suffix) { this.value = value + "-" + suffix; }
+    }
+
+    public static class Holder {
+        @Getter @Setter public Dummy dummy;
+        @Getter @Setter public boolean active;
+    }
+
     private static final String ID = "id";
     public static final String NAME = "name";
 
@@ -59,4 +80,113 @@ public class ReflectionUtilTest {
 
 
     }
+
+    @Test public void testPaths () throws Exception {
+        final Holder holder = new Holder();
+        assertFalse(ReflectionUtil.hasGetter(holder, "dummy.name"));
+        assertFalse(ReflectionUtil.hasSetter(holder, "dummy.name", String.class));
+
+        holder.setDummy(new Dummy(1L, NAME));
+        assertTrue(ReflectionUtil.hasGetter(holder, "dummy.name"));
+        assertTrue(ReflectionUtil.hasGetter(holder, "active"));
+        assertFalse(ReflectionUtil.hasGetter(holder, "dummy.nothing"));
+        assertTrue(ReflectionUtil.hasSetter(holder, "dummy.name", String.class));
+        assertFalse(ReflectionUtil.hasSetter(holder, "dummy.name", Long.class));
+
+        ReflectionUtil.set(holder, "dummy.name", "nested");
+        assertEquals("nested", ReflectionUtil.get(holder, "dummy.name"));
+
+        // missing properties fail the same way every time, whether or not the lookup was cached
+        for (int i=0; i<2; i++) {
+            try {
+                ReflectionUtil.get(holder, "dummy.nothing");
+                fail("should not have found a getter for nothing");
+            } catch (Exception expected) {}
+        }
+    }
+
+    @Test public void testCopy () throws Exception {
+        final Dummy src = new Dummy(1L, NAME);
+        final Dummy dest = new Dummy(2L, null);
+        // the second copy uses the same plan, and finds nothing left to copy
+        assertEquals(2, ReflectionUtil.copy(dest, src));
+        assertEquals(0, ReflectionUtil.copy(dest, src));
+        assertEquals(src.getId(), dest.getId());
+        assertEquals(NAME, dest.getName());
+
+        dest.setId(3L);
+        assertEquals(0, ReflectionUtil.copy(dest, src, new String[] {NAME}));
+        assertEquals(Long.valueOf(3L), dest.getId());
+
+        final Map<String, Object> map = ReflectionUtil.toMap(src);
+        assertEquals(2, map.size());
+        assertEquals(NAME, map.get(NAME));
+    }
+
+    public static class Base<A, B> {}
+    public static class Middle<T> extends Base<String, T> {}
+    public static class Leaf extends Middle<Long> {}
+    public static class DummyMappy extends MappyList<String, Dummy> {}
+
+    @Test public void testTypeParams () throws Exception {
+        assertEquals(Long.class, ReflectionUtil.getFirstTypeParam(Leaf.class));
+        assertEquals(String.class, ReflectionUtil.getTypeParam(Leaf.class, Base.class, 0));
+        assertEquals(Long.class, ReflectionUtil.getTypeParam(Leaf.class, Base.class, 1));
+        assertEquals(Long.class, ReflectionUtil.getFirstTypeParam(Leaf.class, Number.class));
+        assertNull(ReflectionUtil.getFirstTypeParam(Leaf.class, Dummy.class));
+        assertEquals(Long.class, ReflectionUtil.getTypeParameter(Leaf.class, Number.class));
+        assertEquals(Dummy.class, ReflectionUtil.getTypeParam(DummyMappy.class, Mappy.class, 1));
+        assertEquals(List.class, new DummyMappy().getValueClass());
+    }
+
+    @Test public void testInstantiate () throws Exception {
+        assertEquals("a-copy", ReflectionUtil.copy(new Copyable("a")).getValue());
+        assertEquals("b-copy", ReflectionUtil.copy(new Copyable("b")).getValue());
+        assertEquals("c-1", ReflectionUtil.instantiate(Copyable.class, "c", 1L).getValue());
+        assertEquals("d", ReflectionUtil.instantiate(Copyable.class, (Object) "d").getValue());
+        assertEquals(Holder.class, ReflectionUtil.instantiate(Holder.class).getClass());
+
+        // no such constructor, the second failure comes from the cache
+        for (int i=0; i<2; i++) {
+            try {
+                ReflectionUtil.instantiate(Copyable.class, 1L, "x");
+                fail("should not have found a constructor for (Long, String)");
+            } catch (Exception expected) {}
+        }
+    }
+
+    @Test public void testColumns () throws Exception {
+        final List<Dummy> dummies = Arrays.asList(new Dummy(1L, "one"), new Dummy(2L, null), new Dummy(3L, "three"));
+        final BeanColumns columns = ReflectionUtil.toColumns(dummies);
+        assertEquals(3, columns.getRowCount());
+        assertEquals(2, columns.getColumnCount());
+        assertEquals(Arrays.asList(1L, 2L, 3L), Arrays.asList(columns.getColumn(ID)));
+
+        final List<Map<String, Object>> maps = ReflectionUtil.toMaps(dummies);
+        for (int i=0; i<dummies.size(); i++) assertEquals(ReflectionUtil.toMap(dummies.get(i)), maps.get(i));
+
+        // row views skip null cells, and see changes to the columns
+        final Map<String, Object> row = columns.row(1);
+        assertEquals(1, row.size());
+        assertEquals(1, row.entrySet().size());
+        assertEquals(ID, row.entrySet().iterator().next().getKey());
+        row.put(NAME, "two");
+        assertEquals(2, row.size());
+        final List<String> keys = new ArrayList<>();
+        for (Map.Entry<String, Object> entry : row.entrySet()) keys.add(entry.getKey());
+        assertEquals(new ArrayList<>(columns.getNames()), keys);
+        row.put(NAME, null);
+        assertEquals(ReflectionUtil.toMap(dummies.get(1)), row);
+
+        final List<Dummy> copies = new ArrayList<>();
+        for (int i=0; i<dummies.size(); i++) copies.add(new Dummy(null, null));
+        ReflectionUtil.copyFromColumns(copies, columns);
+        for (int i=0; i<dummies.size(); i++) assertEquals(ReflectionUtil.toMap(dummies.get(i)), ReflectionUtil.toMap(copies.get(i)));
+
+        final List<Dummy> fromMaps = new ArrayList<>();
+        for (int i=0; i<dummies.size(); i++) fromMaps.add(new Dummy(null, null));
+        ReflectionUtil.copyFromMaps(fromMaps, maps);
+        assertEquals("three", fromMaps.get(2).getName());
+        assertNull(fromMaps.get(1).getName());
+    }
 }